@@ -0,0 +1,111 @@
+package com.github.derrop.documents.benchmarks;
+
+import com.github.derrop.documents.Document;
+import com.github.derrop.documents.Documents;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the single value operations, the append variants write into an empty document and the getters read from
+ * an entry like the ones in {@link Payloads#document(String)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccessBenchmark {
+
+    private final String string = "Entry number 42";
+    private final Integer number = 42;
+    private final byte[] bytes = new byte[64];
+    private final String[] tags = {"alpha", "beta", "gamma"};
+
+    private Document entry;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        this.entry = Documents.newDocument()
+                .append("id", 42)
+                .append("name", this.string)
+                .append("enabled", true)
+                .append("weight", 31.5D)
+                .append("tags", this.tags)
+                .append("data", this.bytes);
+        this.document = Documents.newDocument().append("entry", this.entry);
+    }
+
+    @Benchmark
+    public Document appendString() {
+        return Documents.newDocument().append("name", this.string);
+    }
+
+    @Benchmark
+    public Document appendNumber() {
+        return Documents.newDocument().append("id", this.number);
+    }
+
+    @Benchmark
+    public Document appendBoolean() {
+        return Documents.newDocument().append("enabled", Boolean.TRUE);
+    }
+
+    @Benchmark
+    public Document appendBinary() {
+        return Documents.newDocument().append("data", this.bytes);
+    }
+
+    @Benchmark
+    public Document appendObject() {
+        return Documents.newDocument().append("tags", (Object) this.tags);
+    }
+
+    @Benchmark
+    public Document appendDocument() {
+        return Documents.newDocument().append("entry", this.entry);
+    }
+
+    @Benchmark
+    public String getString() {
+        return this.entry.getString("name");
+    }
+
+    @Benchmark
+    public int getInt() {
+        return this.entry.getInt("id");
+    }
+
+    @Benchmark
+    public double getDouble() {
+        return this.entry.getDouble("weight");
+    }
+
+    @Benchmark
+    public boolean getBoolean() {
+        return this.entry.getBoolean("enabled");
+    }
+
+    @Benchmark
+    public byte[] getBinary() {
+        return this.entry.getBinary("data");
+    }
+
+    @Benchmark
+    public Document getDocument() {
+        return this.document.getDocument("entry");
+    }
+
+    @Benchmark
+    public String[] getObject() {
+        return this.entry.get("tags", String[].class);
+    }
+
+    @Benchmark
+    public Payloads.Entry toInstanceOf() {
+        return this.entry.toInstanceOf(Payloads.Entry.class);
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.github.derrop.documents.benchmarks;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Scores of a previous run read from the JSON output of JMH, see the baseline directory of this module.
+ */
+public class Baseline {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private final Map<String, Score> scores = new HashMap<>();
+    private final Map<String, Score> allocations = new HashMap<>();
+
+    public static Baseline load(Path path) throws IOException {
+        Baseline baseline = new Baseline();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                JsonObject result = element.getAsJsonObject();
+
+                Map<String, String> params = new TreeMap<>();
+                if (result.has("params")) {
+                    for (Map.Entry<String, JsonElement> param : result.getAsJsonObject("params").entrySet()) {
+                        params.put(param.getKey(), param.getValue().getAsString());
+                    }
+                }
+                String key = key(result.get("benchmark").getAsString(), params);
+
+                baseline.scores.put(key, Score.of(result.getAsJsonObject("primaryMetric")));
+                JsonObject secondary = result.getAsJsonObject("secondaryMetrics");
+                if (secondary != null && secondary.has(ALLOCATION)) {
+                    baseline.allocations.put(key, Score.of(secondary.getAsJsonObject(ALLOCATION)));
+                }
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * A benchmark only counts as a regression if the lower end of its confidence interval is above the upper end of
+     * the interval in the baseline plus the tolerance, so noisy benchmarks with large errors don't fail the
+     * comparison.
+     *
+     * @return a description of every benchmark that took or allocated more than the baseline plus the tolerance,
+     * benchmarks that are not in the baseline are ignored
+     */
+    public List<String> compare(Collection<RunResult> results, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (RunResult result : results) {
+            Map<String, String> params = new TreeMap<>();
+            for (String name : result.getParams().getParamsKeys()) {
+                params.put(name, result.getParams().getParam(name));
+            }
+            String key = key(result.getParams().getBenchmark(), params);
+
+            Result<?> primary = result.getPrimaryResult();
+            check(regressions, key, primary.getScoreUnit(), this.scores.get(key), Score.of(primary), tolerance, 0);
+
+            Result<?> allocation = result.getSecondaryResults().get(ALLOCATION);
+            if (allocation != null) {
+                // a few bytes of slack so that benchmarks without allocations don't fail on rounding noise
+                check(regressions, key + " allocation", allocation.getScoreUnit(), this.allocations.get(key), Score.of(allocation), tolerance, 16);
+            }
+        }
+        return regressions;
+    }
+
+    private static void check(List<String> regressions, String key, String unit, Score expected, Score actual, double tolerance, double slack) {
+        if (expected != null && actual.score - actual.error > (expected.score + expected.error) * (1 + tolerance) + slack) {
+            regressions.add(String.format("%s: %.3f +- %.3f %s, baseline %.3f +- %.3f %s",
+                    key, actual.score, actual.error, unit, expected.score, expected.error, unit));
+        }
+    }
+
+    private static String key(String benchmark, Map<String, String> params) {
+        return params.isEmpty() ? benchmark : benchmark + " " + params;
+    }
+
+    private static final class Score {
+
+        private final double score;
+        private final double error;
+
+        private Score(double score, double error) {
+            this.score = score;
+            // JMH reports NaN if there are too few iterations to estimate the error
+            this.error = Double.isNaN(error) ? 0 : error;
+        }
+
+        private static Score of(JsonObject metric) {
+            // NaN is written as a string, which getAsDouble parses as well
+            JsonElement error = metric.get("scoreError");
+            return new Score(metric.get("score").getAsDouble(), error == null ? Double.NaN : error.getAsDouble());
+        }
+
+        private static Score of(Result<?> result) {
+            return new Score(result.getScore(), result.getScoreError());
+        }
+
+    }
+
+}
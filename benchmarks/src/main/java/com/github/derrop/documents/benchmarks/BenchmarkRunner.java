@@ -0,0 +1,57 @@
+package com.github.derrop.documents.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Runs the benchmarks like the JMH main class with the same arguments, but always with the GC profiler for the
+ * allocation rates and with the results written to results.json by default.
+ * <p>
+ * With {@code -Dbaseline=<file>} the results are compared with the given JMH JSON results, if a benchmark got slower
+ * or allocates more than {@code -Dtolerance} (default 0.2 = 20%) beyond the score errors of both runs, the
+ * regressions are printed and the runner exits with 1.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+            Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class);
+        if (!commandLine.getResult().hasValue()) {
+            options.result("results.json");
+        }
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        String baseline = System.getProperty("baseline");
+        if (baseline != null) {
+            double tolerance = Double.parseDouble(System.getProperty("tolerance", "0.2"));
+            List<String> regressions = Baseline.load(Paths.get(baseline)).compare(results, tolerance);
+            if (!regressions.isEmpty()) {
+                System.err.println("Regressions compared to " + baseline + ":");
+                regressions.forEach(regression -> System.err.println("  " + regression));
+                System.exit(1);
+            }
+            System.out.println("No regressions compared to " + baseline);
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.github.derrop.documents.benchmarks;
+
+import com.github.derrop.documents.Document;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts documents of different sizes into objects with {@link Document#toInstanceOf(Type)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConvertBenchmark {
+
+    private static final Type ENTRIES = new TypeToken<Map<String, Payloads.Entry>>() {
+    }.getType();
+
+    @Param({Payloads.SMALL, Payloads.MEDIUM, Payloads.LARGE})
+    public String size;
+
+    private Document document;
+
+    @Setup
+    public void setup() {
+        this.document = Payloads.document(this.size);
+    }
+
+    @Benchmark
+    public Map<String, Payloads.Entry> toInstanceOf() {
+        return this.document.toInstanceOf(ENTRIES);
+    }
+
+    @Benchmark
+    public Object toPlainObjects() {
+        return this.document.toPlainObjects();
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.github.derrop.documents.benchmarks;
+
+import com.github.derrop.documents.Document;
+import com.github.derrop.documents.Documents;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the UTF-8 byte parser with decoding the payload into a String and parsing it with Gson, and reading a
+ * single value with the {@link com.github.derrop.documents.LazyDocument} with reading it from a fully parsed one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonReadBenchmark {
+
+    @Param({Payloads.SMALL, Payloads.MEDIUM, Payloads.LARGE})
+    public String size;
+
+    private byte[] input;
+
+    @Setup
+    public void setup() {
+        this.input = Payloads.json(this.size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Document utf8Bytes() {
+        return Documents.newJsonDocument(this.input);
+    }
+
+    @Benchmark
+    public Document decodedString() {
+        return Documents.jsonStorage().read(new String(this.input, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String singleValue() {
+        return Documents.newJsonDocument(this.input).getDocument("entry-0").getString("name");
+    }
+
+    @Benchmark
+    public String lazySingleValue() {
+        return Documents.newLazyJsonDocument(this.input).getDocument("entry-0").getString("name");
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.github.derrop.documents.benchmarks;
+
+import com.github.derrop.documents.Document;
+import com.github.derrop.documents.Documents;
+
+public class Payloads {
+
+    public static final String SMALL = "small";
+    public static final String MEDIUM = "medium";
+    public static final String LARGE = "large";
+
+    public static int entries(String size) {
+        switch (size) {
+            case SMALL:
+                return 8;
+            case MEDIUM:
+                return 500;
+            case LARGE:
+                return 50_000;
+            default:
+                throw new IllegalArgumentException("Unknown payload size " + size);
+        }
+    }
+
+    public static Document document(String size) {
+        int entries = entries(size);
+        Document document = Documents.newDocument();
+        for (int i = 0; i < entries; i++) {
+            document.append("entry-" + i, Documents.newDocument()
+                    .append("id", i)
+                    .append("name", "Entry number " + i)
+                    .append("enabled", i % 2 == 0)
+                    .append("weight", i * 0.75D)
+                    .append("tags", new String[]{"alpha", "beta", "gamma"}));
+        }
+        return document;
+    }
+
+    /**
+     * The type of the values in {@link #document(String)}, for benchmarks that convert documents into objects.
+     */
+    public static class Entry {
+
+        public int id;
+        public String name;
+        public boolean enabled;
+        public double weight;
+        public String[] tags;
+
+    }
+
+    public static String yaml(String size) {
+        return document(size).yaml().serializeToString();
+    }
+
+    public static String json(String size) {
+        return document(size).json().serializeToString();
+    }
+
+}
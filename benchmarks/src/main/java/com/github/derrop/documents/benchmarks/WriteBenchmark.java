@@ -0,0 +1,45 @@
+package com.github.derrop.documents.benchmarks;
+
+import com.github.derrop.documents.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes documents of different sizes into strings with the JSON and the YAML storage, and into UTF-8 bytes
+ * with the JSON storage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({Payloads.SMALL, Payloads.MEDIUM, Payloads.LARGE})
+    public String size;
+
+    private Document document;
+
+    @Setup
+    public void setup() {
+        this.document = Payloads.document(this.size);
+    }
+
+    @Benchmark
+    public String json() {
+        return this.document.json().serializeToString();
+    }
+
+    @Benchmark
+    public byte[] jsonBytes() {
+        return this.document.json().toByteArray();
+    }
+
+    @Benchmark
+    public String yaml() {
+        return this.document.yaml().serializeToString();
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.github.derrop.documents.benchmarks;
+
+import com.github.derrop.documents.DefaultDocument;
+import com.github.derrop.documents.Document;
+import com.github.derrop.documents.Documents;
+import org.openjdk.jmh.annotations.*;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.representer.Representer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the event based YAML reader with the previous path that loaded a map first and converted it with Gson.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class YamlReadBenchmark {
+
+    @Param({Payloads.SMALL, Payloads.MEDIUM, Payloads.LARGE})
+    public String size;
+
+    private String input;
+    private Yaml yaml;
+
+    @Setup
+    public void setup() {
+        this.input = Payloads.yaml(this.size);
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        this.yaml = new Yaml(new Constructor(), new Representer(), options);
+    }
+
+    @Benchmark
+    public Document eventReader() {
+        return Documents.newYamlDocument(this.input);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public Document mapThenTree() {
+        Map<String, Object> map = this.yaml.loadAs(this.input, LinkedHashMap.class);
+        return new DefaultDocument(DefaultDocument.GSON.toJsonTree(map));
+    }
+
+}
@@ -0,0 +1,782 @@
+package com.github.derrop.documents;
+
+import com.github.derrop.documents.storage.DocumentStorage;
+import com.github.derrop.documents.storage.PooledStringWriter;
+import com.github.derrop.documents.storage.SpecificDocumentStorage;
+import com.github.derrop.documents.storage.Utf8ByteWriter;
+import com.github.derrop.documents.storage.WrappedSpecificDocumentStorage;
+import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The logic of the {@link Document} methods on top of a few methods to access the entries, shared by the different
+ * implementations like the {@link DefaultDocument} and the {@link ConcurrentDocument}.
+ * <p>
+ * Implementations have to provide {@link #get(String)}, {@link #put(String, JsonElement)}, {@link #remove(String)},
+ * {@link #contains(String)}, {@link #keys()}, {@link #size()} and {@link #toJsonObject()}, and may override the other
+ * methods if they can do better.
+ *
+ * @param <D> the type of the implementation, returned by the chained methods
+ */
+public abstract class AbstractDocument<D extends AbstractDocument<D>> implements Document {
+
+    /**
+     * Sets the given value without any conversion, {@code null} values are never passed.
+     */
+    protected abstract void put(String key, JsonElement value);
+
+    /**
+     * Creates a document of this implementation for a nested object, used by {@link #getDocument(String)} and
+     * {@link #getDocuments(String)}.
+     */
+    protected abstract D newDocument(JsonObject jsonObject);
+
+    @SuppressWarnings("unchecked")
+    protected D self() {
+        return (D) this;
+    }
+
+    @Override
+    public abstract D remove(String key);
+
+    @Override
+    public Object toPlainObjects() {
+        return this.asObject(this.toJsonObject());
+    }
+
+    private Object asObject(JsonElement element) {
+        if (element instanceof JsonBinary) {
+            return ((JsonBinary) element).getBytes();
+        } else if (element.isJsonArray()) {
+            Collection<Object> array = new ArrayList<>(element.getAsJsonArray().size());
+            for (JsonElement jsonElement : element.getAsJsonArray()) {
+                array.add(this.asObject(jsonElement));
+            }
+            return array;
+        } else if (element.isJsonObject()) {
+            Map<String, Object> map = new HashMap<>(element.getAsJsonObject().size());
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                Object value = this.asObject(entry.getValue());
+                if (value != null) {
+                    map.put(entry.getKey(), value);
+                }
+            }
+            return map;
+        } else if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+
+            if (primitive.isString()) {
+                return primitive.getAsString();
+            } else if (primitive.isNumber()) {
+                return primitive.getAsNumber();
+            } else if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            } else {
+                return null;
+            }
+
+        } else {
+            return null;
+        }
+    }
+
+    public D clear() {
+        new ArrayList<>(this.keys()).forEach(this::remove);
+        return this.self();
+    }
+
+    public <T> T toInstanceOf(Class<T> clazz) {
+        DocumentCodec<T> codec = DocumentCodecs.find(clazz, DefaultDocument.GSON);
+        if (codec != null) {
+            return codec.read(this);
+        }
+
+        return DefaultDocument.GSON.fromJson(DefaultDocument.toGsonTree(this.toJsonObject()), clazz);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T toInstanceOf(Type type) {
+        if (type instanceof Class) {
+            return this.toInstanceOf((Class<T>) type);
+        }
+
+        return DefaultDocument.GSON.fromJson(DefaultDocument.toGsonTree(this.toJsonObject()), type);
+    }
+
+    public D append(String key, Object value) {
+        if (key == null || value == null) {
+            return this.self();
+        }
+
+        if (value instanceof Document) {
+            return this.append(key, (Document) value);
+        }
+
+        this.put(key, DocumentCodecs.toJsonTree(value));
+        return this.self();
+    }
+
+    public D append(String key, Number value) {
+        if (key == null || value == null) {
+            return this.self();
+        }
+
+        this.put(key, new JsonPrimitive(value));
+        return this.self();
+    }
+
+    public D append(String key, Boolean value) {
+        if (key == null || value == null) {
+            return this.self();
+        }
+
+        this.put(key, new JsonPrimitive(value));
+        return this.self();
+    }
+
+    public D append(String key, String value) {
+        if (key == null || value == null) {
+            return this.self();
+        }
+
+        this.put(key, new JsonPrimitive(value));
+        return this.self();
+    }
+
+    public D append(String key, Character value) {
+        if (key == null || value == null) {
+            return this.self();
+        }
+
+        this.put(key, new JsonPrimitive(value));
+        return this.self();
+    }
+
+    public D append(String key, Document value) {
+        if (key == null || value == null) {
+            return this.self();
+        }
+
+        this.put(key, value.toJsonObject());
+        return this.self();
+    }
+
+    public D append(Document document) {
+        if (document == null) {
+            return this.self();
+        } else {
+            return this.append(document.toJsonObject());
+        }
+    }
+
+    public D append(JsonObject jsonObject) {
+        if (jsonObject == null) {
+            return this.self();
+        }
+
+        for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+            this.put(entry.getKey(), entry.getValue());
+        }
+
+        return this.self();
+    }
+
+    public D append(Properties properties) {
+        if (properties == null) {
+            return this.self();
+        }
+
+        Object entry;
+        Enumeration<?> enumeration = properties.keys();
+
+        while (enumeration.hasMoreElements() && (entry = enumeration.nextElement()) != null) {
+            this.append(entry.toString(), properties.getProperty(entry.toString()));
+        }
+
+        return this.self();
+    }
+
+    public D append(String key, Properties properties) {
+        return this.append(key, new DefaultDocument(properties));
+    }
+
+    public D append(String key, byte[] bytes) {
+        if (key == null || bytes == null) {
+            return this.self();
+        }
+
+        this.put(key, new JsonBinary(bytes));
+        return this.self();
+    }
+
+    public D append(Map<String, Object> map) {
+        if (map == null) {
+            return this.self();
+        }
+
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            this.append(entry.getKey(), entry.getValue());
+        }
+
+        return this.self();
+    }
+
+    public D append(InputStream inputStream) {
+        try (InputStreamReader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+            return this.append(reader);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+        }
+        return this.self();
+    }
+
+    public D append(Reader reader) {
+        return this.append(JsonParser.parseReader(reader).getAsJsonObject());
+    }
+
+    public D getDocument(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonObject()) {
+            return this.newDocument(jsonElement.getAsJsonObject());
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Collection<Document> getDocuments(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonArray()) {
+            JsonArray array = jsonElement.getAsJsonArray();
+            Collection<Document> documents = new ArrayList<>();
+            for (JsonElement element : array) {
+                if (element.isJsonObject()) {
+                    documents.add(this.newDocument(element.getAsJsonObject()));
+                }
+            }
+            return documents;
+        }
+
+        return null;
+    }
+
+    public int getInt(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsInt();
+        } else {
+            return 0;
+        }
+    }
+
+    public double getDouble(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsDouble();
+        } else {
+            return 0;
+        }
+    }
+
+    public float getFloat(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsFloat();
+        } else {
+            return 0;
+        }
+    }
+
+    public byte getByte(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsByte();
+        } else {
+            return 0;
+        }
+    }
+
+    public short getShort(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsShort();
+        } else {
+            return 0;
+        }
+    }
+
+    public long getLong(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsLong();
+        } else {
+            return 0;
+        }
+    }
+
+    public boolean getBoolean(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsBoolean();
+        } else {
+            return false;
+        }
+    }
+
+    public String getString(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && (jsonElement.isJsonPrimitive() || jsonElement instanceof JsonBinary)) {
+            return jsonElement.getAsString();
+        } else {
+            return null;
+        }
+    }
+
+    public char getChar(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsString().charAt(0);
+        } else {
+            return 0;
+        }
+    }
+
+    public BigDecimal getBigDecimal(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsBigDecimal();
+        } else {
+            return null;
+        }
+    }
+
+    public BigInteger getBigInteger(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsBigInteger();
+        } else {
+            return null;
+        }
+    }
+
+    public JsonArray getJsonArray(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonArray()) {
+            return jsonElement.getAsJsonArray();
+        } else {
+            return null;
+        }
+    }
+
+    public JsonObject getJsonObject(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement != null && jsonElement.isJsonObject()) {
+            return jsonElement.getAsJsonObject();
+        } else {
+            return null;
+        }
+    }
+
+    public Properties getProperties(String key) {
+        Properties properties = new Properties();
+
+        for (Map.Entry<String, JsonElement> entry : this.toJsonObject().entrySet()) {
+            properties.setProperty(entry.getKey(), DefaultDocument.toGsonTree(entry.getValue()).toString());
+        }
+
+        return properties;
+    }
+
+    public byte[] getBinary(String key) {
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement instanceof JsonBinary) {
+            return ((JsonBinary) jsonElement).getBytes();
+        } else if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            // documents read from JSON contain the Base64 string
+            return Base64.getDecoder().decode(jsonElement.getAsString());
+        } else {
+            return null;
+        }
+    }
+
+    public <T> T get(String key, Class<T> clazz) {
+        return this.get(key, DefaultDocument.GSON, clazz);
+    }
+
+    public <T> T get(String key, Type type) {
+        return this.get(key, DefaultDocument.GSON, type);
+    }
+
+    public <T> T get(String key, Gson gson, Class<T> clazz) {
+        if (key == null || gson == null || clazz == null) {
+            return null;
+        }
+
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement == null) {
+            return null;
+        } else if (jsonElement instanceof JsonBinary && clazz == byte[].class) {
+            return clazz.cast(((JsonBinary) jsonElement).getBytes());
+        }
+
+        DocumentCodec<T> codec = jsonElement.isJsonObject() ? DocumentCodecs.find(clazz, gson) : null;
+        if (codec != null) {
+            return codec.read(new DefaultDocument(jsonElement.getAsJsonObject()));
+        } else {
+            return gson.fromJson(DefaultDocument.toGsonTree(jsonElement), clazz);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Gson gson, Type type) {
+        if (key == null || gson == null || type == null) {
+            return null;
+        } else if (type instanceof Class) {
+            return this.get(key, gson, (Class<T>) type);
+        }
+
+        JsonElement jsonElement = this.get(key);
+
+        if (jsonElement == null) {
+            return null;
+        } else if (jsonElement instanceof JsonBinary && type == byte[].class) {
+            return (T) ((JsonBinary) jsonElement).getBytes();
+        } else {
+            return gson.fromJson(DefaultDocument.toGsonTree(jsonElement), type);
+        }
+    }
+
+    public Integer getInt(String key, Integer def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getInt(key);
+    }
+
+    public Short getShort(String key, Short def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getShort(key);
+    }
+
+    public Boolean getBoolean(String key, Boolean def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getBoolean(key);
+    }
+
+    public Long getLong(String key, Long def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getLong(key);
+    }
+
+    public Double getDouble(String key, Double def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getDouble(key);
+    }
+
+    public Float getFloat(String key, Float def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getFloat(key);
+    }
+
+    public String getString(String key, String def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getString(key);
+    }
+
+    public D getDocument(String key, Document def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getDocument(key);
+    }
+
+    @Override
+    public Collection<Document> getDocuments(String key, Collection<Document> def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getDocuments(key);
+    }
+
+    public JsonArray getJsonArray(String key, JsonArray def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getJsonArray(key);
+    }
+
+    public JsonObject getJsonObject(String key, JsonObject def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getJsonObject(key);
+    }
+
+    public byte[] getBinary(String key, byte[] def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getBinary(key);
+    }
+
+    public <T> T get(String key, Type type, T def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.get(key, type);
+    }
+
+    public <T> T get(String key, Class<T> clazz, T def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.get(key, clazz);
+    }
+
+    public Properties getProperties(String key, Properties def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getProperties(key);
+    }
+
+    public BigInteger getBigInteger(String key, BigInteger def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getBigInteger(key);
+    }
+
+    public BigDecimal getBigDecimal(String key, BigDecimal def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getBigDecimal(key);
+    }
+
+    public Character getChar(String key, Character def) {
+        if (!this.contains(key)) {
+            this.append(key, def);
+        }
+
+        return this.getChar(key);
+    }
+
+    @Override
+    public JsonElement select(String path) {
+        return DocumentPath.compile(path).select(this);
+    }
+
+    @Override
+    public JsonElement select(DocumentPath path) {
+        return path.select(this);
+    }
+
+    @Override
+    public List<JsonElement> selectAll(String path) {
+        return DocumentPath.compile(path).selectAll(this);
+    }
+
+    @Override
+    public List<JsonElement> selectAll(DocumentPath path) {
+        return path.selectAll(this);
+    }
+
+    @Override
+    public D selectDocument(String path) {
+        JsonElement jsonElement = this.select(path);
+
+        if (jsonElement != null && jsonElement.isJsonObject()) {
+            return this.newDocument(jsonElement.getAsJsonObject());
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public String selectString(String path) {
+        JsonElement jsonElement = this.select(path);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsString();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public int selectInt(String path) {
+        JsonElement jsonElement = this.select(path);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsInt();
+        } else {
+            return 0;
+        }
+    }
+
+    @Override
+    public long selectLong(String path) {
+        JsonElement jsonElement = this.select(path);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsLong();
+        } else {
+            return 0;
+        }
+    }
+
+    @Override
+    public double selectDouble(String path) {
+        JsonElement jsonElement = this.select(path);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsDouble();
+        } else {
+            return 0;
+        }
+    }
+
+    @Override
+    public boolean selectBoolean(String path) {
+        JsonElement jsonElement = this.select(path);
+
+        if (jsonElement != null && jsonElement.isJsonPrimitive()) {
+            return jsonElement.getAsBoolean();
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public SpecificDocumentStorage json() {
+        return this.storage(Documents.jsonStorage());
+    }
+
+    @Override
+    public SpecificDocumentStorage yaml() {
+        return this.storage(Documents.yamlStorage());
+    }
+
+    @Override
+    public SpecificDocumentStorage storage(DocumentStorage storage) {
+        return new WrappedSpecificDocumentStorage(this, storage);
+    }
+
+    /**
+     * Writes the entries of this document as JSON, by default the result of {@link #toJsonObject()}.
+     */
+    protected void writeJson(JsonWriter jsonWriter) throws IOException {
+        DefaultDocument.ELEMENT_ADAPTER.write(jsonWriter, this.toJsonObject());
+    }
+
+    public String toPrettyJson() {
+        PooledStringWriter writer = PooledStringWriter.acquire();
+        try {
+            JsonWriter jsonWriter = DefaultDocument.GSON.newJsonWriter(writer);
+            jsonWriter.setLenient(true);
+            this.writeJson(jsonWriter);
+            return writer.toString();
+        } catch (IOException exception) {
+            throw new JsonIOException(exception);
+        } finally {
+            writer.release();
+        }
+    }
+
+    public String toJson() {
+        PooledStringWriter writer = PooledStringWriter.acquire();
+        try {
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            jsonWriter.setLenient(true);
+            this.writeJson(jsonWriter);
+            return writer.toString();
+        } catch (IOException exception) {
+            throw new JsonIOException(exception);
+        } finally {
+            writer.release();
+        }
+    }
+
+    /**
+     * @return the UTF-8 bytes of {@link #toJson()}, encoded directly without creating the string first
+     */
+    public byte[] toByteArray() {
+        Utf8ByteWriter writer = Utf8ByteWriter.acquire();
+        try {
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            jsonWriter.setLenient(true);
+            this.writeJson(jsonWriter);
+            return writer.toByteArray();
+        } catch (IOException exception) {
+            throw new JsonIOException(exception);
+        } finally {
+            writer.release();
+        }
+    }
+
+    public String toString() {
+        return this.toJson();
+    }
+
+    public Iterator<String> iterator() {
+        return this.keys().iterator();
+    }
+
+}
@@ -0,0 +1,424 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A codec for plain classes that accesses the fields with method handles, created by {@link DocumentCodecs}.
+ * <p>
+ * The fields are the ones Gson would use: all fields of the class and its superclasses that are neither static nor
+ * transient, in the same order and with the names of {@link SerializedName}. Numbers, booleans, strings and nested
+ * objects with a codec are converted directly, all other fields and values of an unexpected type are converted by
+ * {@link DefaultDocument#GSON}, so that the results and errors are the same as before.
+ */
+final class CompiledCodec<T> implements DocumentCodec<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final int INT = 0;
+    private static final int LONG = 1;
+    private static final int SHORT = 2;
+    private static final int BYTE = 3;
+    private static final int DOUBLE = 4;
+    private static final int FLOAT = 5;
+    private static final int BOOLEAN = 6;
+    private static final int STRING = 7;
+    private static final int OBJECT = 8;
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final Property[] properties;
+    /**
+     * The properties by their names and alternate names, {@code null} if there are no alternate names.
+     */
+    private final Map<String, Property> propertiesByName;
+
+    private CompiledCodec(Class<T> type, MethodHandle constructor, Property[] properties, Map<String, Property> propertiesByName) {
+        this.type = type;
+        this.constructor = constructor;
+        this.properties = properties;
+        this.propertiesByName = propertiesByName;
+    }
+
+    /**
+     * @return the codec for the given class or {@code null} if Gson has to handle it
+     */
+    static <T> CompiledCodec<T> compile(Class<T> type) {
+        if (!isSupported(type)) {
+            return null;
+        }
+
+        try {
+            Constructor<T> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+
+            List<Property> properties = new ArrayList<>();
+            Map<String, Property> propertiesByName = new HashMap<>();
+            boolean alternates = false;
+            for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+                if (current.getTypeParameters().length != 0 || current.isAnnotationPresent(JsonAdapter.class)) {
+                    // type variables are resolved by Gson with the type of the subclass
+                    return null;
+                }
+
+                for (Field field : current.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    if (field.isAnnotationPresent(JsonAdapter.class) || field.getType().isAnonymousClass() || field.getType().isLocalClass()) {
+                        return null;
+                    }
+
+                    Property property = new Property(field);
+                    if (propertiesByName.put(property.name, property) != null) {
+                        return null;
+                    }
+                    for (String alternate : property.alternates) {
+                        if (propertiesByName.put(alternate, property) != null) {
+                            return null;
+                        }
+                        alternates = true;
+                    }
+                    properties.add(property);
+                }
+            }
+
+            MethodHandle handle = LOOKUP.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+            return new CompiledCodec<>(type, handle, properties.toArray(new Property[0]), alternates ? propertiesByName : null);
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException exception) {
+            // no constructor without arguments (Gson would use Unsafe) or fields that cannot be accessed
+            return null;
+        }
+    }
+
+    private static boolean isSupported(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum() || Modifier.isAbstract(type.getModifiers())
+                || type.isAnonymousClass() || type.isLocalClass()
+                || JsonElement.class.isAssignableFrom(type) || Document.class.isAssignableFrom(type)) {
+            return false;
+        }
+
+        // Gson has its own adapters for many classes of the JDK, and its own classes are handled by Gson as well
+        String name = type.getName();
+        return !name.startsWith("java.") && !name.startsWith("javax.") && !name.startsWith("sun.") && !name.startsWith("com.google.gson.");
+    }
+
+    @Override
+    public void write(T value, JsonObject target) {
+        try {
+            for (Property property : this.properties) {
+                property.write(value, target);
+            }
+        } catch (Throwable throwable) {
+            throw rethrow(throwable);
+        }
+    }
+
+    @Override
+    public T read(Document source) {
+        try {
+            Object instance = this.constructor.invokeExact();
+            if (this.propertiesByName == null) {
+                for (Property property : this.properties) {
+                    JsonElement element = source.get(property.name);
+                    if (element != null) {
+                        property.read(instance, element);
+                    }
+                }
+            } else {
+                // like Gson, the last of the names of a property in the document wins
+                for (String key : source.keys()) {
+                    Property property = this.propertiesByName.get(key);
+                    JsonElement element = property == null ? null : source.get(key);
+                    if (element != null) {
+                        property.read(instance, element);
+                    }
+                }
+            }
+            return this.type.cast(instance);
+        } catch (Throwable throwable) {
+            throw rethrow(throwable);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable throwable) {
+        if (throwable instanceof RuntimeException) {
+            return (RuntimeException) throwable;
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        } else {
+            return new RuntimeException(throwable);
+        }
+    }
+
+    private static void checkValidFloatingPoint(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // the same exception as the one of Gson
+            throw new IllegalArgumentException(value + " is not a valid double value as per JSON specification. To override this"
+                    + " behavior, use GsonBuilder.serializeSpecialFloatingPointValues() method.");
+        }
+    }
+
+    private static final class Property {
+
+        private final String name;
+        private final String[] alternates;
+        private final Type type;
+        private final Class<?> rawType;
+        private final int kind;
+        private final boolean primitive;
+        /**
+         * What Gson writes for {@code null}, {@link JsonNull} except for types with an adapter that isn't null safe
+         * like the one of the {@link DefaultDocument}.
+         */
+        private final JsonElement nullValue;
+
+        /**
+         * Typed like the field for primitives of the known kinds, {@code (Object)Object} and {@code (Object,Object)void}
+         * for all others.
+         */
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        /**
+         * {@code (Object,Object)void} for all fields, for values converted by Gson.
+         */
+        private final MethodHandle objectSetter;
+
+        private Property(Field field) throws IllegalAccessException {
+            SerializedName serializedName = field.getAnnotation(SerializedName.class);
+            this.name = serializedName == null ? field.getName() : serializedName.value();
+            this.alternates = serializedName == null ? new String[0] : serializedName.alternate();
+            this.type = field.getGenericType();
+            this.rawType = field.getType();
+            this.kind = kindOf(this.rawType);
+            this.primitive = this.rawType.isPrimitive();
+            this.nullValue = this.kind == OBJECT && !this.primitive ? DefaultDocument.DEFAULT_GSON.toJsonTree(null, this.type) : JsonNull.INSTANCE;
+
+            field.setAccessible(true);
+            MethodHandle getter = LOOKUP.unreflectGetter(field);
+            MethodHandle setter = LOOKUP.unreflectSetter(field);
+            boolean typed = this.primitive && this.kind != OBJECT;
+            this.getter = getter.asType(MethodType.methodType(typed ? this.rawType : Object.class, Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, typed ? this.rawType : Object.class));
+            this.objectSetter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+
+        private static int kindOf(Class<?> type) {
+            if (type == int.class || type == Integer.class) {
+                return INT;
+            } else if (type == long.class || type == Long.class) {
+                return LONG;
+            } else if (type == short.class || type == Short.class) {
+                return SHORT;
+            } else if (type == byte.class || type == Byte.class) {
+                return BYTE;
+            } else if (type == double.class || type == Double.class) {
+                return DOUBLE;
+            } else if (type == float.class || type == Float.class) {
+                return FLOAT;
+            } else if (type == boolean.class || type == Boolean.class) {
+                return BOOLEAN;
+            } else if (type == String.class) {
+                return STRING;
+            } else {
+                return OBJECT;
+            }
+        }
+
+        private void write(Object instance, JsonObject target) throws Throwable {
+            if (this.primitive && this.kind != OBJECT) {
+                target.add(this.name, this.writePrimitive(instance));
+                return;
+            }
+
+            Object value = this.getter.invokeExact(instance);
+            if (value == null) {
+                target.add(this.name, this.nullValue.deepCopy());
+            } else if (this.kind == DOUBLE || this.kind == FLOAT) {
+                checkValidFloatingPoint(((Number) value).doubleValue());
+                target.add(this.name, new JsonPrimitive((Number) value));
+            } else if (value instanceof Number) {
+                target.add(this.name, new JsonPrimitive((Number) value));
+            } else if (value instanceof Boolean) {
+                target.add(this.name, new JsonPrimitive((Boolean) value));
+            } else if (value instanceof String) {
+                target.add(this.name, new JsonPrimitive((String) value));
+            } else if (value != instance) {
+                // Gson skips fields that reference the object itself
+                target.add(this.name, this.writeObject(value));
+            }
+        }
+
+        private JsonPrimitive writePrimitive(Object instance) throws Throwable {
+            switch (this.kind) {
+                case INT:
+                    return new JsonPrimitive((int) this.getter.invokeExact(instance));
+                case LONG:
+                    return new JsonPrimitive((long) this.getter.invokeExact(instance));
+                case SHORT:
+                    return new JsonPrimitive((short) this.getter.invokeExact(instance));
+                case BYTE:
+                    return new JsonPrimitive((byte) this.getter.invokeExact(instance));
+                case DOUBLE:
+                    double doubleValue = (double) this.getter.invokeExact(instance);
+                    checkValidFloatingPoint(doubleValue);
+                    return new JsonPrimitive(doubleValue);
+                case FLOAT:
+                    float floatValue = (float) this.getter.invokeExact(instance);
+                    checkValidFloatingPoint(floatValue);
+                    return new JsonPrimitive(floatValue);
+                default:
+                    return new JsonPrimitive((boolean) this.getter.invokeExact(instance));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private JsonElement writeObject(Object value) {
+            // nested objects are written with their runtime type, like Gson does for classes without an adapter
+            DocumentCodec<Object> codec = (DocumentCodec<Object>) DocumentCodecs.find(value.getClass(), DefaultDocument.DEFAULT_GSON);
+            if (codec != null) {
+                JsonObject jsonObject = new JsonObject();
+                codec.write(value, jsonObject);
+                return jsonObject;
+            }
+            return value.getClass() == this.rawType
+                    ? DefaultDocument.DEFAULT_GSON.toJsonTree(value, this.type)
+                    : DefaultDocument.DEFAULT_GSON.toJsonTree(value);
+        }
+
+        private void read(Object instance, JsonElement element) throws Throwable {
+            try {
+                this.readValue(instance, element);
+            } catch (JsonSyntaxException exception) {
+                throw this.withPath(exception);
+            }
+        }
+
+        /**
+         * The value is converted on its own, so Gson reports paths relative to it, e.g. {@code $} instead of
+         * {@code $.name}.
+         */
+        private JsonSyntaxException withPath(JsonSyntaxException exception) {
+            String message = exception.getMessage();
+            int index = message == null ? -1 : message.indexOf(" path $");
+            if (index == -1) {
+                return exception;
+            }
+            index += " path $".length();
+            return new JsonSyntaxException(message.substring(0, index) + '.' + this.name + message.substring(index), exception.getCause());
+        }
+
+        private void readValue(Object instance, JsonElement element) throws Throwable {
+            if (element.isJsonNull()) {
+                if (!this.primitive) {
+                    this.objectSetter.invokeExact(instance, (Object) null);
+                }
+                return;
+            }
+
+            JsonPrimitive primitive = element.isJsonPrimitive() ? element.getAsJsonPrimitive() : null;
+            boolean numeric = primitive != null && (primitive.isNumber() || primitive.isString());
+            try {
+                if (numeric && this.kind <= FLOAT) {
+                    this.readNumber(instance, primitive);
+                    return;
+                } else if (this.kind == BOOLEAN && primitive != null && (primitive.isBoolean() || primitive.isString())) {
+                    boolean value = primitive.getAsBoolean();
+                    if (this.primitive) {
+                        this.setter.invokeExact(instance, value);
+                    } else {
+                        this.setter.invokeExact(instance, (Object) value);
+                    }
+                    return;
+                } else if (this.kind == STRING && primitive != null) {
+                    this.setter.invokeExact(instance, (Object) primitive.getAsString());
+                    return;
+                } else if (this.kind == OBJECT && element.isJsonObject()) {
+                    DocumentCodec<?> codec = DocumentCodecs.find(this.rawType, DefaultDocument.DEFAULT_GSON);
+                    if (codec != null) {
+                        this.setter.invokeExact(instance, (Object) codec.read(new DefaultDocument(element.getAsJsonObject())));
+                        return;
+                    }
+                }
+            } catch (NumberFormatException exception) {
+                throw new JsonSyntaxException(exception);
+            }
+
+            // everything else is converted by Gson
+            Object value = DefaultDocument.DEFAULT_GSON.fromJson(DefaultDocument.toGsonTree(element), this.type);
+            if (value != null || !this.primitive) {
+                this.objectSetter.invokeExact(instance, value);
+            }
+        }
+
+        private void readNumber(Object instance, JsonPrimitive primitive) throws Throwable {
+            // the same conversions as the adapters of Gson when they read a tree
+            if (this.primitive) {
+                switch (this.kind) {
+                    case INT:
+                        this.setter.invokeExact(instance, primitive.getAsInt());
+                        break;
+                    case LONG:
+                        this.setter.invokeExact(instance, primitive.getAsLong());
+                        break;
+                    case SHORT:
+                        this.setter.invokeExact(instance, (short) primitive.getAsInt());
+                        break;
+                    case BYTE:
+                        this.setter.invokeExact(instance, (byte) primitive.getAsInt());
+                        break;
+                    case DOUBLE:
+                        this.setter.invokeExact(instance, primitive.getAsDouble());
+                        break;
+                    default:
+                        this.setter.invokeExact(instance, (float) primitive.getAsDouble());
+                        break;
+                }
+                return;
+            }
+
+            Object value;
+            switch (this.kind) {
+                case INT:
+                    value = primitive.getAsInt();
+                    break;
+                case LONG:
+                    value = primitive.getAsLong();
+                    break;
+                case SHORT:
+                    value = (short) primitive.getAsInt();
+                    break;
+                case BYTE:
+                    value = (byte) primitive.getAsInt();
+                    break;
+                case DOUBLE:
+                    value = primitive.getAsDouble();
+                    break;
+                default:
+                    value = (float) primitive.getAsDouble();
+                    break;
+            }
+            this.setter.invokeExact(instance, value);
+        }
+
+    }
+
+}
@@ -0,0 +1,238 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A document that can be shared between threads without external locking, backed by a {@link ConcurrentHashMap}.
+ * <p>
+ * Reads don't lock at all. Updates of different keys run in parallel, and the operations on a single key like
+ * {@link #compute(String, BiFunction)} and {@link #putIfAbsent(String, JsonElement)} are atomic. Updates take the
+ * read lock of the stripe of their key, which {@link #toJsonObject()} acquires exclusively for all stripes, so the
+ * snapshot that storages write never contains half of an update. There is one stripe per processor (at most 16), so
+ * updates of different keys rarely contend on the same lock. Calls that update more than one key, like
+ * {@link #append(Document)}, are not atomic.
+ * <p>
+ * Objects, arrays and binaries are copied when they are added and when they are returned, so that they cannot be
+ * modified without going through the document. Because of this, changes to the documents returned by
+ * {@link #getDocument(String)} don't affect this document. The order of the keys is not preserved.
+ */
+public class ConcurrentDocument extends AbstractDocument<ConcurrentDocument> {
+
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final Map<String, JsonElement> entries = new ConcurrentHashMap<>();
+    private final ReadWriteLock[] snapshotLocks = newLocks();
+
+    public ConcurrentDocument() {
+    }
+
+    public ConcurrentDocument(JsonObject jsonObject) {
+        this.append(jsonObject);
+    }
+
+    public ConcurrentDocument(Document document) {
+        this.append(document);
+    }
+
+    @Override
+    protected void put(String key, JsonElement value) {
+        JsonElement copy = copyOf(value);
+        Lock lock = this.updateLock(key);
+        lock.lock();
+        try {
+            this.entries.put(key, copy);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected ConcurrentDocument newDocument(JsonObject jsonObject) {
+        // only called with copies returned by this document, so the values are taken over without copying them again
+        ConcurrentDocument document = new ConcurrentDocument();
+        for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+            document.entries.put(entry.getKey(), entry.getValue());
+        }
+        return document;
+    }
+
+    @Override
+    public Collection<String> keys() {
+        return Collections.unmodifiableSet(this.entries.keySet());
+    }
+
+    @Override
+    public int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public ConcurrentDocument remove(String key) {
+        if (key == null) {
+            return this;
+        }
+
+        Lock lock = this.updateLock(key);
+        lock.lock();
+        try {
+            this.entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return key != null && this.entries.containsKey(key);
+    }
+
+    @Override
+    public JsonElement get(String key) {
+        if (key == null) {
+            return null;
+        }
+
+        JsonElement element = this.entries.get(key);
+        return element == null ? null : copyOf(element);
+    }
+
+    /**
+     * Atomically replaces the value of the given key with the result of the function, see
+     * {@link ConcurrentHashMap#compute(Object, BiFunction)}. The function gets {@code null} if the key doesn't exist
+     * and can return {@code null} to remove it. It must not update this document itself.
+     *
+     * @return the new value
+     */
+    public JsonElement compute(String key, BiFunction<String, JsonElement, JsonElement> function) {
+        Lock lock = this.updateLock(key);
+        lock.lock();
+        try {
+            JsonElement element = this.entries.compute(key, (name, current) -> copyOf(function.apply(name, current == null ? null : copyOf(current))));
+            return element == null ? null : copyOf(element);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Atomically sets the result of the function if the given key doesn't exist yet, see
+     * {@link ConcurrentHashMap#computeIfAbsent(Object, Function)}. The function must not update this document itself.
+     *
+     * @return the current value
+     */
+    public JsonElement computeIfAbsent(String key, Function<String, JsonElement> function) {
+        Lock lock = this.updateLock(key);
+        lock.lock();
+        try {
+            JsonElement element = this.entries.computeIfAbsent(key, name -> copyOf(function.apply(name)));
+            return element == null ? null : copyOf(element);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the previous value or {@code null} if the given value has been set
+     */
+    public JsonElement putIfAbsent(String key, JsonElement value) {
+        JsonElement copy = copyOf(value);
+        Lock lock = this.updateLock(key);
+        lock.lock();
+        try {
+            JsonElement element = this.entries.putIfAbsent(key, copy);
+            return element == null ? null : copyOf(element);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the given value only if the current value {@link JsonElement#equals(Object) equals} the expected one.
+     *
+     * @return {@code true} if the value has been replaced
+     */
+    public boolean replace(String key, JsonElement expected, JsonElement value) {
+        JsonElement copy = copyOf(value);
+        Lock lock = this.updateLock(key);
+        lock.lock();
+        try {
+            return this.entries.replace(key, expected, copy);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Atomically adds the given delta to the number with the given key, missing keys and values that aren't numbers
+     * count as 0.
+     *
+     * @return the new value
+     */
+    public long increment(String key, long delta) {
+        JsonElement element = this.compute(key, (name, current) -> {
+            long value = current != null && current.isJsonPrimitive() && current.getAsJsonPrimitive().isNumber() ? current.getAsLong() : 0;
+            return new JsonPrimitive(value + delta);
+        });
+        return element.getAsLong();
+    }
+
+    /**
+     * Creates a consistent copy of all entries: updates that are in progress are completed before and new updates
+     * wait until the copy has been created.
+     */
+    @Override
+    public JsonObject toJsonObject() {
+        JsonObject jsonObject = new JsonObject();
+        for (ReadWriteLock lock : this.snapshotLocks) {
+            lock.writeLock().lock();
+        }
+        try {
+            // the stored values are never modified, so they can be copied after the locks have been released
+            for (Map.Entry<String, JsonElement> entry : this.entries.entrySet()) {
+                jsonObject.add(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            for (int i = this.snapshotLocks.length - 1; i >= 0; i--) {
+                this.snapshotLocks[i].writeLock().unlock();
+            }
+        }
+
+        for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+            entry.setValue(copyOf(entry.getValue()));
+        }
+        return jsonObject;
+    }
+
+    private static ReadWriteLock[] newLocks() {
+        ReadWriteLock[] locks = new ReadWriteLock[STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        return locks;
+    }
+
+    private Lock updateLock(String key) {
+        int hash = key.hashCode();
+        return this.snapshotLocks[(hash ^ (hash >>> 16)) & (STRIPES - 1)].readLock();
+    }
+
+    private static JsonElement copyOf(JsonElement element) {
+        // primitives and null are never modified, objects, arrays and the bytes of binaries have to be copied
+        return element != null && (element.isJsonObject() || element.isJsonArray() || element instanceof JsonBinary)
+                ? element.deepCopy() : element;
+    }
+
+}
@@ -1,29 +1,59 @@
 package com.github.derrop.documents;
 
-import com.github.derrop.documents.storage.DocumentStorage;
-import com.github.derrop.documents.storage.SpecificDocumentStorage;
-import com.github.derrop.documents.storage.WrappedSpecificDocumentStorage;
 import com.google.gson.*;
 import com.google.gson.internal.bind.TypeAdapters;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.lang.reflect.Type;
-import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-public class DefaultDocument implements Document {
+public class DefaultDocument extends AbstractDocument<DefaultDocument> {
+
+    /**
+     * Writes trees like {@link TypeAdapters#JSON_ELEMENT}, but also supports the element types of this library
+     * that Gson doesn't know, like {@link JsonBinary} and {@link JsonRawValue}.
+     */
+    public static final TypeAdapter<JsonElement> ELEMENT_ADAPTER = new TypeAdapter<JsonElement>() {
+        @Override
+        public void write(JsonWriter jsonWriter, JsonElement element) throws IOException {
+            if (element instanceof JsonBinary) {
+                jsonWriter.value(element.getAsString());
+            } else if (element instanceof JsonRawValue) {
+                JsonRawValue value = (JsonRawValue) element;
+                if (value.isFormattedFor(jsonWriter)) {
+                    jsonWriter.jsonValue(value.toString());
+                } else {
+                    this.write(jsonWriter, LazyDocument.parse(value));
+                }
+            } else if (element != null && element.isJsonObject()) {
+                jsonWriter.beginObject();
+                for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                    jsonWriter.name(entry.getKey());
+                    this.write(jsonWriter, entry.getValue());
+                }
+                jsonWriter.endObject();
+            } else if (element != null && element.isJsonArray()) {
+                jsonWriter.beginArray();
+                for (JsonElement child : element.getAsJsonArray()) {
+                    this.write(jsonWriter, child);
+                }
+                jsonWriter.endArray();
+            } else {
+                TypeAdapters.JSON_ELEMENT.write(jsonWriter, element);
+            }
+        }
+
+        @Override
+        public JsonElement read(JsonReader jsonReader) throws IOException {
+            return TypeAdapters.JSON_ELEMENT.read(jsonReader);
+        }
+    };
 
     public static final TypeAdapter<DefaultDocument> TYPE_ADAPTER = new TypeAdapter<DefaultDocument>() {
         @Override
         public void write(JsonWriter jsonWriter, DefaultDocument document) throws IOException {
-            TypeAdapters.JSON_ELEMENT.write(jsonWriter, document == null ? new JsonObject() : document.jsonObject);
+            ELEMENT_ADAPTER.write(jsonWriter, document == null ? new JsonObject() : document.jsonObject);
         }
 
         @Override
@@ -37,15 +67,32 @@ public class DefaultDocument implements Document {
         }
     };
 
-    public static Gson GSON = new GsonBuilder()
-            .serializeNulls()
-            .disableHtmlEscaping()
-            .setPrettyPrinting()
-            .registerTypeAdapterFactory(TypeAdapters.newTypeHierarchyFactory(DefaultDocument.class, TYPE_ADAPTER))
-            .create();
+    /**
+     * The initial value of {@link #GSON}, the {@link DocumentCodec}s are only used as long as it hasn't been replaced.
+     */
+    static final Gson DEFAULT_GSON = newGsonBuilder().setPrettyPrinting().create();
+
+    public static Gson GSON = DEFAULT_GSON;
 
     private final JsonObject jsonObject;
 
+    /**
+     * The values of the keys that have been changed or accessed since the changes are tracked, {@code null} as the
+     * value if there was none and as the map if changes aren't tracked.
+     */
+    private Map<String, JsonElement> originalValues;
+
+    /**
+     * Creates a builder with the same settings as {@link #GSON} except for pretty printing, to be used for storages
+     * that need a different output format, see {@link Documents#jsonStorage(Gson)}.
+     */
+    public static GsonBuilder newGsonBuilder() {
+        return new GsonBuilder()
+                .serializeNulls()
+                .disableHtmlEscaping()
+                .registerTypeAdapterFactory(TypeAdapters.newTypeHierarchyFactory(DefaultDocument.class, TYPE_ADAPTER));
+    }
+
     public DefaultDocument(JsonObject jsonObject) {
         this.jsonObject = jsonObject;
     }
@@ -55,7 +102,7 @@ public class DefaultDocument implements Document {
     }
 
     public DefaultDocument(Object toObjectMirror) {
-        this(GSON.toJsonTree(toObjectMirror));
+        this(DocumentCodecs.toJsonTree(toObjectMirror));
     }
 
     public DefaultDocument(JsonElement jsonElement) {
@@ -103,42 +150,14 @@ public class DefaultDocument implements Document {
     }
 
     @Override
-    public Object toPlainObjects() {
-        return this.asObject(this.jsonObject);
+    protected void put(String key, JsonElement value) {
+        this.recordChange(key);
+        this.jsonObject.add(key, value);
     }
 
-    private Object asObject(JsonElement element) {
-        if (element.isJsonArray()) {
-            Collection<Object> array = new ArrayList<>(element.getAsJsonArray().size());
-            for (JsonElement jsonElement : element.getAsJsonArray()) {
-                array.add(this.asObject(jsonElement));
-            }
-            return array;
-        } else if (element.isJsonObject()) {
-            Map<String, Object> map = new HashMap<>(element.getAsJsonObject().size());
-            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
-                Object value = this.asObject(entry.getValue());
-                if (value != null) {
-                    map.put(entry.getKey(), value);
-                }
-            }
-            return map;
-        } else if (element.isJsonPrimitive()) {
-            JsonPrimitive primitive = element.getAsJsonPrimitive();
-
-            if (primitive.isString()) {
-                return primitive.getAsString();
-            } else if (primitive.isNumber()) {
-                return primitive.getAsNumber();
-            } else if (primitive.isBoolean()) {
-                return primitive.getAsBoolean();
-            } else {
-                return null;
-            }
-
-        } else {
-            return null;
-        }
+    @Override
+    protected DefaultDocument newDocument(JsonObject jsonObject) {
+        return new DefaultDocument(jsonObject);
     }
 
     public Collection<String> keys() {
@@ -149,12 +168,8 @@ public class DefaultDocument implements Document {
         return this.jsonObject.size();
     }
     
-    public DefaultDocument clear() {
-        this.keys().forEach(this::remove);
-        return this;
-    }
-    
     public DefaultDocument remove(String key) {
+        this.recordChange(key);
         this.jsonObject.remove(key);
         return this;
     }
@@ -162,581 +177,117 @@ public class DefaultDocument implements Document {
     public boolean contains(String key) {
         return key != null && this.jsonObject.has(key);
     }
-    
-    public <T> T toInstanceOf(Class<T> clazz) {
-        return GSON.fromJson(jsonObject, clazz);
-    }
-    
-    public <T> T toInstanceOf(Type type) {
-        return GSON.fromJson(jsonObject, type);
-    }
-    
-    public DefaultDocument append(String key, Object value) {
-        if (key == null || value == null) {
-            return this;
-        }
 
-        this.jsonObject.add(key, GSON.toJsonTree(value));
-        return this;
-    }
-    
-    public DefaultDocument append(String key, Number value) {
-        if (key == null || value == null) {
-            return this;
-        }
-
-        this.jsonObject.addProperty(key, value);
-        return this;
-    }
-    
-    public DefaultDocument append(String key, Boolean value) {
-        if (key == null || value == null) {
-            return this;
-        }
-
-        this.jsonObject.addProperty(key, value);
-        return this;
-    }
-    
-    public DefaultDocument append(String key, String value) {
-        if (key == null || value == null) {
-            return this;
-        }
-
-        this.jsonObject.addProperty(key, value);
-        return this;
-    }
-
-    public DefaultDocument append(String key, Character value) {
-        if (key == null || value == null) {
-            return this;
-        }
-
-        this.jsonObject.addProperty(key, value);
-        return this;
-    }
-
-    public DefaultDocument append(String key, Document value) {
-        if (key == null || value == null) {
-            return this;
-        }
-
-        this.jsonObject.add(key, ((DefaultDocument) value).jsonObject);
-        return this;
-    }
-
-    public DefaultDocument append(Document document) {
-        if (document == null) {
-            return this;
-        } else {
-            return append(((DefaultDocument) document).jsonObject);
-        }
-    }
-
-    public DefaultDocument append(JsonObject jsonObject) {
-        if (jsonObject == null) {
-            return this;
-        }
-
-        for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
-            this.jsonObject.add(entry.getKey(), entry.getValue());
+    public JsonElement get(String key) {
+        if (!contains(key)) {
+            return null;
         }
 
-        return this;
+        JsonElement element = this.jsonObject.get(key);
+        this.recordAccess(key, element);
+        return element;
     }
 
-    public DefaultDocument append(Properties properties) {
-        if (properties == null) {
-            return this;
-        }
-
-        Object entry;
-        Enumeration<?> enumeration = properties.keys();
-
-        while (enumeration.hasMoreElements() && (entry = enumeration.nextElement()) != null) {
-            append(entry.toString(), properties.getProperty(entry.toString()));
+    /**
+     * Starts to record the changes of this document, which can be retrieved with {@link #getChanges()} and
+     * {@link #getMergeChanges()}, e.g. to send only the changes to other copies of the document instead of the whole
+     * document.
+     * <p>
+     * Changes by {@link #append}, {@link #remove(String)} and {@link #clear()} are recorded as well as changes of
+     * objects and arrays returned by this document, like the documents returned by {@link #getDocument(String)}. The
+     * first time a key is changed or an object or array is returned, its value is copied to be compared with the new
+     * value later. Changes to the object returned by {@link #toJsonObject()} are not recorded.
+     */
+    public DefaultDocument trackChanges() {
+        if (this.originalValues == null) {
+            this.originalValues = new LinkedHashMap<>();
         }
-
         return this;
     }
 
-    public DefaultDocument append(String key, Properties properties) {
-        return append(key, new DefaultDocument(properties));
-    }
-
-    public DefaultDocument append(String key, byte[] bytes) {
-        if (key == null || bytes == null) {
-            return this;
-        }
-
-        return this.append(key, Base64.getEncoder().encodeToString(bytes));
+    public boolean isTrackingChanges() {
+        return this.originalValues != null;
     }
 
-    public DefaultDocument append(Map<String, Object> map) {
-        if (map == null) {
-            return this;
-        }
-
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            this.append(entry.getKey(), entry.getValue());
-        }
-
+    public DefaultDocument stopTrackingChanges() {
+        this.originalValues = null;
         return this;
     }
 
-    public DefaultDocument append(InputStream inputStream) {
-        try (InputStreamReader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
-            return append(reader);
-        } catch (Exception exception) {
-            exception.printStackTrace();
+    /**
+     * Forgets the recorded changes so that the following changes are recorded relative to the current state. Objects
+     * and arrays returned before have to be retrieved again for their changes to be recorded.
+     */
+    public DefaultDocument resetChanges() {
+        if (this.originalValues != null) {
+            this.originalValues.clear();
         }
         return this;
     }
 
-    public DefaultDocument append(Reader reader) {
-        return append(JsonParser.parseReader(reader).getAsJsonObject());
-    }
-
-    public DefaultDocument getDocument(String key) {
-        if (!contains(key)) {
-            return null;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonObject()) {
-            return new DefaultDocument(jsonElement);
-        } else {
-            return null;
-        }
-    }
-
-    @Override
-    public Collection<Document> getDocuments(String key) {
-        if (!contains(key)) {
-            return null;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonArray()) {
-            JsonArray array = jsonElement.getAsJsonArray();
-            Collection<Document> documents = new ArrayList<>();
-            for (JsonElement element : array) {
-                if (element.isJsonObject()) {
-                    documents.add(new DefaultDocument(element.getAsJsonObject()));
-                }
+    /**
+     * @return the operations that change the document from the state when the changes were tracked or reset into the
+     * current state
+     * @throws IllegalStateException if changes are not tracked
+     */
+    public JsonPatch getChanges() {
+        JsonArray operations = new JsonArray();
+        for (Map.Entry<String, JsonElement> entry : this.originalValues().entrySet()) {
+            JsonElement original = parsed(entry.getValue());
+            JsonElement current = parsed(this.jsonObject.get(entry.getKey()));
+            String path = "/" + JsonPatch.escape(entry.getKey());
+            if (original == null && current != null) {
+                operations.add(JsonPatch.operation("add", path, current.deepCopy()));
+            } else if (original != null && current == null) {
+                operations.add(JsonPatch.operation("remove", path, null));
+            } else if (original != null) {
+                JsonPatch.diff(path, original, current, operations);
             }
-            return documents;
-        }
-
-        return null;
-    }
-
-    public int getInt(String key) {
-        if (!contains(key)) {
-            return 0;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsInt();
-        } else {
-            return 0;
-        }
-    }
-
-    public double getDouble(String key) {
-        if (!contains(key)) {
-            return 0;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsDouble();
-        } else {
-            return 0;
-        }
-    }
-    
-    public float getFloat(String key) {
-        if (!contains(key)) {
-            return 0;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsFloat();
-        } else {
-            return 0;
-        }
-    }
-    
-    public byte getByte(String key) {
-        if (!contains(key)) {
-            return 0;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsByte();
-        } else {
-            return 0;
-        }
-    }
-    
-    public short getShort(String key) {
-        if (!contains(key)) {
-            return 0;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsShort();
-        } else {
-            return 0;
-        }
-    }
-
-    public long getLong(String key) {
-        if (!contains(key)) {
-            return 0;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsLong();
-        } else {
-            return 0;
-        }
-    }
-
-    public boolean getBoolean(String key) {
-        if (!contains(key)) {
-            return false;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsBoolean();
-        } else {
-            return false;
-        }
-    }
-
-    public String getString(String key) {
-        if (!contains(key)) {
-            return null;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsString();
-        } else {
-            return null;
         }
+        return JsonPatch.fromJson(operations);
     }
 
-    public char getChar(String key) {
-        if (!contains(key)) {
-            return 0;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsString().charAt(0);
-        } else {
-            return 0;
-        }
-    }
-
-    public BigDecimal getBigDecimal(String key) {
-        if (!contains(key)) {
-            return null;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsBigDecimal();
-        } else {
-            return null;
-        }
-    }
-
-    public BigInteger getBigInteger(String key) {
-        if (!contains(key)) {
-            return null;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonPrimitive()) {
-            return jsonElement.getAsBigInteger();
-        } else {
-            return null;
-        }
-    }
-
-    public JsonArray getJsonArray(String key) {
-        if (!contains(key)) {
-            return null;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonArray()) {
-            return jsonElement.getAsJsonArray();
-        } else {
-            return null;
-        }
-    }
-
-    public JsonObject getJsonObject(String key) {
-        if (!contains(key)) {
-            return null;
-        }
-
-        JsonElement jsonElement = this.jsonObject.get(key);
-
-        if (jsonElement.isJsonObject()) {
-            return jsonElement.getAsJsonObject();
-        } else {
-            return null;
-        }
-    }
-
-    public Properties getProperties(String key) {
-        Properties properties = new Properties();
-
-        for (Map.Entry<String, JsonElement> entry : this.jsonObject.entrySet()) {
-            properties.setProperty(entry.getKey(), entry.getValue().toString());
-        }
-
-        return properties;
-    }
-
-    public JsonElement get(String key) {
-        if (!contains(key)) {
-            return null;
-        }
-
-        return this.jsonObject.get(key);
-    }
-
-    public byte[] getBinary(String key) {
-        return Base64.getDecoder().decode(this.getString(key));
-    }
-
-    public <T> T get(String key, Class<T> clazz) {
-        return this.get(key, GSON, clazz);
-    }
-
-    public <T> T get(String key, Type type) {
-        return this.get(key, GSON, type);
-    }
-
-    public <T> T get(String key, Gson gson, Class<T> clazz) {
-        if (key == null || gson == null || clazz == null) {
-            return null;
-        }
-
-        JsonElement jsonElement = get(key);
-
-        if (jsonElement == null) {
-            return null;
-        } else {
-            return gson.fromJson(jsonElement, clazz);
-        }
-    }
-
-    public <T> T get(String key, Gson gson, Type type) {
-        if (key == null || gson == null || type == null) {
-            return null;
-        }
-
-        if (!contains(key)) {
-            return null;
-        }
-
-        JsonElement jsonElement = get(key);
-
-        if (jsonElement == null) {
-            return null;
-        } else {
-            return gson.fromJson(jsonElement, type);
-        }
-    }
-
-    public Integer getInt(String key, Integer def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getInt(key);
-    }
-
-    public Short getShort(String key, Short def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getShort(key);
-    }
-
-    public Boolean getBoolean(String key, Boolean def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getBoolean(key);
-    }
-
-    public Long getLong(String key, Long def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getLong(key);
-    }
-
-    public Double getDouble(String key, Double def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getDouble(key);
-    }
-
-
-    public Float getFloat(String key, Float def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getFloat(key);
-    }
-
-    public String getString(String key, String def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getString(key);
-    }
-
-    public DefaultDocument getDocument(String key, Document def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getDocument(key);
-    }
-
-    @Override
-    public Collection<Document> getDocuments(String key, Collection<Document> def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getDocuments(key);
-    }
-
-    public JsonArray getJsonArray(String key, JsonArray def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getJsonArray(key);
-    }
-
-    public JsonObject getJsonObject(String key, JsonObject def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getJsonObject(key);
-    }
-
-    public byte[] getBinary(String key, byte[] def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.getBinary(key);
-    }
-
-
-    public <T> T get(String key, Type type, T def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.get(key, type);
-    }
-
-    public <T> T get(String key, Class<T> clazz, T def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
-        }
-
-        return this.get(key, clazz);
-    }
-
-    public Properties getProperties(String key, Properties def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
+    /**
+     * @return the changes like {@link #getChanges()} as a merge patch, see {@link MergePatch}
+     * @throws IllegalStateException if changes are not tracked
+     */
+    public DefaultDocument getMergeChanges() {
+        JsonObject patch = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : this.originalValues().entrySet()) {
+            JsonElement value = MergePatch.diffValue(parsed(entry.getValue()), parsed(this.jsonObject.get(entry.getKey())));
+            if (value != null) {
+                patch.add(entry.getKey(), value);
+            }
         }
-
-        return this.getProperties(key);
+        return new DefaultDocument(patch);
     }
 
-    public BigInteger getBigInteger(String key, BigInteger def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
+    private Map<String, JsonElement> originalValues() {
+        if (this.originalValues == null) {
+            throw new IllegalStateException("Changes are not tracked");
         }
-
-        return this.getBigInteger(key);
+        return this.originalValues;
     }
 
-    public BigDecimal getBigDecimal(String key, BigDecimal def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
+    private void recordChange(String key) {
+        if (this.originalValues != null && !this.originalValues.containsKey(key)) {
+            // the old value is replaced and not modified, so it doesn't have to be copied
+            this.originalValues.put(key, this.jsonObject.get(key));
         }
-
-        return this.getBigDecimal(key);
     }
 
-    public Character getChar(String key, Character def) {
-        if (!this.contains(key)) {
-            this.append(key, def);
+    /**
+     * Copies the given value of the given key if it can be modified by the caller.
+     */
+    void recordAccess(String key, JsonElement element) {
+        if (this.originalValues != null && (element.isJsonObject() || element.isJsonArray())
+                && !this.originalValues.containsKey(key)) {
+            this.originalValues.put(key, element.deepCopy());
         }
-
-        return this.getChar(key);
-    }
-
-    @Override
-    public SpecificDocumentStorage json() {
-        return this.storage(Documents.jsonStorage());
-    }
-
-    @Override
-    public SpecificDocumentStorage yaml() {
-        return this.storage(Documents.yamlStorage());
     }
 
-    @Override
-    public SpecificDocumentStorage storage(DocumentStorage storage) {
-        return new WrappedSpecificDocumentStorage(this, storage);
+    private static JsonElement parsed(JsonElement element) {
+        return element instanceof JsonRawValue ? LazyDocument.parse((JsonRawValue) element) : element;
     }
 
     @Override
@@ -744,23 +295,52 @@ public class DefaultDocument implements Document {
         return this.jsonObject;
     }
 
-    public String toPrettyJson() {
-        return GSON.toJson(this.jsonObject);
-    }
-
-    public String toJson() {
-        return this.jsonObject.toString();
+    @Override
+    protected void writeJson(JsonWriter jsonWriter) throws IOException {
+        // the tree itself instead of toJsonObject(), so that the LazyDocument keeps its unparsed values
+        ELEMENT_ADAPTER.write(jsonWriter, this.jsonObject);
+    }
+
+    /**
+     * Replaces the {@link JsonBinary} values in the given tree with Base64 strings so that it can be handed to Gson,
+     * subtrees without binary values are shared with the given tree.
+     */
+    static JsonElement toGsonTree(JsonElement element) {
+        if (element instanceof JsonBinary) {
+            return new JsonPrimitive(element.getAsString());
+        } else if (!containsBinary(element)) {
+            return element;
+        } else if (element.isJsonObject()) {
+            JsonObject copy = new JsonObject();
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                copy.add(entry.getKey(), toGsonTree(entry.getValue()));
+            }
+            return copy;
+        } else {
+            JsonArray copy = new JsonArray(element.getAsJsonArray().size());
+            for (JsonElement child : element.getAsJsonArray()) {
+                copy.add(toGsonTree(child));
+            }
+            return copy;
+        }
     }
 
-    public byte[] toByteArray() {
-        return toJson().getBytes(StandardCharsets.UTF_8);
-    }
-    
-    public String toString() {
-        return toJson();
-    }
-    
-    public Iterator<String> iterator() {
-        return this.jsonObject.keySet().iterator();
+    private static boolean containsBinary(JsonElement element) {
+        if (element instanceof JsonBinary) {
+            return true;
+        } else if (element.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                if (containsBinary(entry.getValue())) {
+                    return true;
+                }
+            }
+        } else if (element.isJsonArray()) {
+            for (JsonElement child : element.getAsJsonArray()) {
+                if (containsBinary(child)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 }
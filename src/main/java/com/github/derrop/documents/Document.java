@@ -11,6 +11,7 @@ import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -138,6 +139,30 @@ public interface Document {
 
     Character getChar(String key, Character def);
 
+    /**
+     * @return the first value matching the given path like {@code a.b[0].c}, see {@link DocumentPath} for the syntax,
+     * or {@code null} if there is none
+     */
+    JsonElement select(String path);
+
+    JsonElement select(DocumentPath path);
+
+    List<JsonElement> selectAll(String path);
+
+    List<JsonElement> selectAll(DocumentPath path);
+
+    Document selectDocument(String path);
+
+    String selectString(String path);
+
+    int selectInt(String path);
+
+    long selectLong(String path);
+
+    double selectDouble(String path);
+
+    boolean selectBoolean(String path);
+
     SpecificDocumentStorage json();
 
     SpecificDocumentStorage yaml();
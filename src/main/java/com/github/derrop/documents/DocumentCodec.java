@@ -0,0 +1,24 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Maps between objects of a class and documents without going through Gson, used by {@link Document#toInstanceOf},
+ * {@link Document#get(String, Class)} and {@link Document#append(String, Object)} if there is one for the class.
+ * Codecs are created automatically for most classes and can be registered for others, see {@link DocumentCodecs}.
+ *
+ * @param <T> the type of the objects
+ */
+public interface DocumentCodec<T> {
+
+    /**
+     * Adds the fields of the given object to the given object of a document.
+     */
+    void write(T value, JsonObject target);
+
+    /**
+     * Creates an object from the entries of the given document.
+     */
+    T read(Document source);
+
+}
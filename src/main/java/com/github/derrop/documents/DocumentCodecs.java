@@ -0,0 +1,102 @@
+package com.github.derrop.documents;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of the {@link DocumentCodec}s.
+ * <p>
+ * For classes without a registered codec, a {@link CompiledCodec} is created on the first use and cached for the
+ * lifetime of the class. It reads and writes the fields with method handles and produces the same results as the
+ * reflection of {@link DefaultDocument#GSON}, but without converting the object into a tree first and reading it
+ * again. Classes that Gson handles specially, like collections, enums, generic classes or classes with a
+ * {@link com.google.gson.annotations.JsonAdapter}, don't get a compiled codec and are still handled by Gson. Compiled
+ * codecs are not used if {@link DefaultDocument#GSON} has been replaced, because they cannot know the settings of
+ * another Gson instance.
+ */
+public final class DocumentCodecs {
+
+    private static final DocumentCodec<?> NONE = new DocumentCodec<Object>() {
+        @Override
+        public void write(Object value, JsonObject target) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object read(Document source) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private static final Map<Class<?>, DocumentCodec<?>> REGISTERED = new ConcurrentHashMap<>();
+    private static final ClassValue<DocumentCodec<?>> COMPILED = new ClassValue<DocumentCodec<?>>() {
+        @Override
+        protected DocumentCodec<?> computeValue(Class<?> type) {
+            DocumentCodec<?> codec = CompiledCodec.compile(type);
+            return codec == null ? NONE : codec;
+        }
+    };
+
+    private DocumentCodecs() {
+    }
+
+    /**
+     * Registers a codec for the given class that is used instead of a compiled codec or Gson, also if
+     * {@link DefaultDocument#GSON} has been replaced. Subclasses are not affected.
+     */
+    public static <T> void register(Class<T> clazz, DocumentCodec<T> codec) {
+        REGISTERED.put(clazz, codec);
+    }
+
+    public static void unregister(Class<?> clazz) {
+        REGISTERED.remove(clazz);
+    }
+
+    /**
+     * @return the registered or compiled codec for the given class or {@code null} if the class can only be handled by
+     * Gson
+     */
+    public static <T> DocumentCodec<T> get(Class<T> clazz) {
+        return find(clazz, DefaultDocument.DEFAULT_GSON);
+    }
+
+    /**
+     * @return the codec to use instead of the given Gson instance or {@code null} if the Gson instance has to be used
+     */
+    @SuppressWarnings("unchecked")
+    static <T> DocumentCodec<T> find(Class<T> clazz, Gson gson) {
+        if (!REGISTERED.isEmpty()) {
+            DocumentCodec<?> codec = REGISTERED.get(clazz);
+            if (codec != null) {
+                return (DocumentCodec<T>) codec;
+            }
+        }
+        if (gson != DefaultDocument.DEFAULT_GSON) {
+            return null;
+        }
+
+        DocumentCodec<?> codec = COMPILED.get(clazz);
+        return codec == NONE ? null : (DocumentCodec<T>) codec;
+    }
+
+    /**
+     * Converts the given object like {@link Gson#toJsonTree(Object)} of {@link DefaultDocument#GSON}, with the codec of
+     * its class if there is one.
+     */
+    @SuppressWarnings("unchecked")
+    static JsonElement toJsonTree(Object value) {
+        DocumentCodec<Object> codec = value == null ? null : (DocumentCodec<Object>) find(value.getClass(), DefaultDocument.GSON);
+        if (codec == null) {
+            return DefaultDocument.GSON.toJsonTree(value);
+        }
+
+        JsonObject jsonObject = new JsonObject();
+        codec.write(value, jsonObject);
+        return jsonObject;
+    }
+
+}
@@ -0,0 +1,405 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * A collection of documents with indexes on the values at given {@link DocumentPath paths}, for finding documents by
+ * their values without going through all of them like with the list returned by {@link Document#getDocuments(String)}.
+ * <p>
+ * Hash indexes created by {@link #hashIndex(String)} find documents by a value in constant time, sorted indexes
+ * created by {@link #sortedIndex(String)} also find them in logarithmic time and support range queries. Indexes are
+ * updated when documents are added or removed. If an indexed value of a document in the collection is changed,
+ * {@link #update(Document)} has to be called to update the indexes.
+ * <p>
+ * Only strings, numbers and booleans are indexed, numbers are compared by their value, so {@code 1} and {@code 1.0}
+ * are equal. In sorted indexes, booleans come before numbers and numbers before strings. Documents without a value
+ * at the path of an index are not contained in it.
+ * <p>
+ * Documents are compared by their identity and kept in the order they were added. This class is not thread safe.
+ */
+public class DocumentCollection implements Iterable<Document> {
+
+    private static final Comparator<Object> KEY_ORDER = (first, second) -> {
+        int rank = Integer.compare(rank(first), rank(second));
+        if (rank != 0) {
+            return rank;
+        }
+        if (first instanceof BigDecimal) {
+            return ((BigDecimal) first).compareTo((BigDecimal) second);
+        } else if (first instanceof String) {
+            return ((String) first).compareTo((String) second);
+        } else {
+            return Boolean.compare((Boolean) first, (Boolean) second);
+        }
+    };
+
+    private final Set<Document> documents = new LinkedHashSet<>();
+    private final Map<String, Index> indexes = new LinkedHashMap<>();
+
+    public DocumentCollection() {
+    }
+
+    public DocumentCollection(Collection<? extends Document> documents) {
+        this.addAll(documents);
+    }
+
+    /**
+     * Creates a collection of the objects in the given array, changes to the documents also change the array.
+     * Elements that are not objects are skipped.
+     */
+    public DocumentCollection(JsonArray array) {
+        for (JsonElement element : array) {
+            if (element.isJsonObject()) {
+                this.add(new DefaultDocument(element.getAsJsonObject()));
+            }
+        }
+    }
+
+    /**
+     * Creates a collection of the documents in the given stream, e.g. from {@link
+     * com.github.derrop.documents.storage.DocumentStorage#stream(java.nio.file.Path)}, and closes the stream.
+     */
+    public DocumentCollection(Stream<Document> stream) {
+        try (Stream<Document> documents = stream) {
+            documents.forEachOrdered(this::add);
+        }
+    }
+
+    /**
+     * Creates a hash index on the given path if there is no index on it yet.
+     */
+    public DocumentCollection hashIndex(String path) {
+        return this.index(path, false);
+    }
+
+    /**
+     * Creates a sorted index on the given path, replacing a hash index on it.
+     */
+    public DocumentCollection sortedIndex(String path) {
+        return this.index(path, true);
+    }
+
+    private DocumentCollection index(String path, boolean sorted) {
+        Index existing = this.indexes.get(path);
+        if (existing != null && (existing.isSorted() || !sorted)) {
+            return this;
+        }
+
+        Index index = new Index(DocumentPath.compile(path), sorted);
+        for (Document document : this.documents) {
+            index.add(document);
+        }
+        this.indexes.put(path, index);
+        return this;
+    }
+
+    public DocumentCollection dropIndex(String path) {
+        this.indexes.remove(path);
+        return this;
+    }
+
+    public boolean hasIndex(String path) {
+        return this.indexes.containsKey(path);
+    }
+
+    /**
+     * @return {@code false} if the document was already in this collection
+     */
+    public boolean add(Document document) {
+        if (!this.documents.add(document)) {
+            return false;
+        }
+        for (Index index : this.indexes.values()) {
+            index.add(document);
+        }
+        return true;
+    }
+
+    public DocumentCollection addAll(Collection<? extends Document> documents) {
+        for (Document document : documents) {
+            this.add(document);
+        }
+        return this;
+    }
+
+    /**
+     * @return {@code false} if the document was not in this collection
+     */
+    public boolean remove(Document document) {
+        if (!this.documents.remove(document)) {
+            return false;
+        }
+        for (Index index : this.indexes.values()) {
+            index.remove(document);
+        }
+        return true;
+    }
+
+    /**
+     * Updates the indexes after values of the given document have been changed.
+     *
+     * @return {@code false} if the document is not in this collection
+     */
+    public boolean update(Document document) {
+        if (!this.documents.contains(document)) {
+            return false;
+        }
+        for (Index index : this.indexes.values()) {
+            index.remove(document);
+            index.add(document);
+        }
+        return true;
+    }
+
+    public boolean contains(Document document) {
+        return this.documents.contains(document);
+    }
+
+    public int size() {
+        return this.documents.size();
+    }
+
+    public boolean isEmpty() {
+        return this.documents.isEmpty();
+    }
+
+    public void clear() {
+        this.documents.clear();
+        for (Index index : this.indexes.values()) {
+            index.clear();
+        }
+    }
+
+    /**
+     * @return the first document with the given value at the given path or {@code null} if there is none. Without an
+     * index on the path, all documents are checked.
+     */
+    public Document findFirst(String path, Object value) {
+        Object key = key(value);
+        Index index = this.indexes.get(path);
+        if (index != null) {
+            Set<Document> documents = index.get(key);
+            return documents == null ? null : documents.iterator().next();
+        }
+
+        DocumentPath documentPath = DocumentPath.compile(path);
+        for (Document document : this.documents) {
+            if (key != null && key.equals(key(documentPath.select(document)))) {
+                return document;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return all documents with the given value at the given path in the order they were added. Without an index on
+     * the path, all documents are checked.
+     */
+    public List<Document> find(String path, Object value) {
+        Object key = key(value);
+        Index index = this.indexes.get(path);
+        if (index != null) {
+            Set<Document> documents = index.get(key);
+            return documents == null ? Collections.emptyList() : new ArrayList<>(documents);
+        }
+
+        List<Document> result = new ArrayList<>();
+        DocumentPath documentPath = DocumentPath.compile(path);
+        for (Document document : this.documents) {
+            if (key != null && key.equals(key(documentPath.select(document)))) {
+                result.add(document);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the documents with values at the given path between the given values, ordered by these values. A bound
+     * that is {@code null} is unbounded.
+     * @throws IllegalStateException if there is no sorted index on the path
+     */
+    public List<Document> range(String path, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        Index index = this.indexes.get(path);
+        if (index == null || !index.isSorted()) {
+            throw new IllegalStateException("There is no sorted index on " + path);
+        }
+
+        NavigableMap<Object, Set<Document>> entries = (NavigableMap<Object, Set<Document>>) index.entries;
+        Object fromKey = key(from);
+        Object toKey = key(to);
+        if (fromKey != null && toKey != null && KEY_ORDER.compare(fromKey, toKey) > 0) {
+            return Collections.emptyList();
+        }
+        if (fromKey != null) {
+            entries = entries.tailMap(fromKey, fromInclusive);
+        }
+        if (toKey != null) {
+            entries = entries.headMap(toKey, toInclusive);
+        }
+
+        List<Document> result = new ArrayList<>();
+        for (Set<Document> documents : entries.values()) {
+            result.addAll(documents);
+        }
+        return result;
+    }
+
+    /**
+     * @return the documents with values at the given path from the given value (inclusive) to the other one
+     * (exclusive)
+     */
+    public List<Document> range(String path, Object from, Object to) {
+        return this.range(path, from, true, to, false);
+    }
+
+    /**
+     * @return all documents in the sorted index on the given path ordered by their values
+     * @throws IllegalStateException if there is no sorted index on the path
+     */
+    public List<Document> sorted(String path) {
+        return this.range(path, null, true, null, true);
+    }
+
+    public Stream<Document> stream() {
+        return this.documents.stream();
+    }
+
+    public List<Document> toList() {
+        return new ArrayList<>(this.documents);
+    }
+
+    public JsonArray toJsonArray() {
+        JsonArray array = new JsonArray();
+        for (Document document : this.documents) {
+            array.add(document.toJsonObject());
+        }
+        return array;
+    }
+
+    @Override
+    public Iterator<Document> iterator() {
+        Iterator<Document> iterator = this.documents.iterator();
+        return new Iterator<Document>() {
+            private Document current;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Document next() {
+                return this.current = iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                for (Index index : DocumentCollection.this.indexes.values()) {
+                    index.remove(this.current);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the value to compare for the given value or {@code null} if it cannot be indexed
+     */
+    private static Object key(Object value) {
+        if (value instanceof JsonElement) {
+            if (!((JsonElement) value).isJsonPrimitive()) {
+                return null;
+            }
+            JsonPrimitive primitive = ((JsonElement) value).getAsJsonPrimitive();
+            if (primitive.isString()) {
+                return primitive.getAsString();
+            } else if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            }
+            value = primitive.getAsNumber();
+        }
+
+        if (value instanceof Number) {
+            try {
+                return new BigDecimal(value.toString()).stripTrailingZeros();
+            } catch (NumberFormatException exception) {
+                return null; // NaN and infinity
+            }
+        } else if (value instanceof String || value instanceof Boolean) {
+            return value;
+        } else if (value instanceof Character) {
+            return value.toString();
+        }
+        return null;
+    }
+
+    private static int rank(Object key) {
+        return key instanceof Boolean ? 0 : key instanceof BigDecimal ? 1 : 2;
+    }
+
+    private static final class Index {
+
+        private final DocumentPath path;
+        private final Map<Object, Set<Document>> entries;
+        private final Map<Document, Object> keys = new IdentityHashMap<>();
+
+        private Index(DocumentPath path, boolean sorted) {
+            this.path = path;
+            this.entries = sorted ? new TreeMap<>(KEY_ORDER) : new HashMap<>();
+        }
+
+        private boolean isSorted() {
+            return this.entries instanceof TreeMap;
+        }
+
+        private Set<Document> get(Object key) {
+            return key == null ? null : this.entries.get(key);
+        }
+
+        private void add(Document document) {
+            Object key = key(this.path.select(document));
+            if (key != null) {
+                this.keys.put(document, key);
+                this.entries.computeIfAbsent(key, k -> new LinkedHashSet<>(2)).add(document);
+            }
+        }
+
+        private void remove(Document document) {
+            // the key it was added with, the value of the document may have been changed since
+            Object key = this.keys.remove(document);
+            if (key != null) {
+                Set<Document> documents = this.entries.get(key);
+                documents.remove(document);
+                if (documents.isEmpty()) {
+                    this.entries.remove(key);
+                }
+            }
+        }
+
+        private void clear() {
+            this.entries.clear();
+            this.keys.clear();
+        }
+
+    }
+
+}
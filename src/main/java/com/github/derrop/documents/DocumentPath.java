@@ -0,0 +1,532 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled path to values nested in documents, used by {@link Document#select(String)} and the other select
+ * methods. The syntax is a subset of JSONPath:
+ * <ul>
+ *     <li>{@code a.b.c} or {@code $.a.b.c}: the value with the key {@code c} in {@code b} in {@code a}</li>
+ *     <li>{@code a[3]}, {@code a[-1]}: the element with the given index in an array, negative indices count from the
+ *     end</li>
+ *     <li>{@code ['a.b']}: keys with characters that have a meaning in paths</li>
+ *     <li>{@code a.*}, {@code a[*]}: all values of an object or array</li>
+ *     <li>{@code ..name}: the values with the given key at any depth, {@code ..*} all values at any depth</li>
+ *     <li>{@code a[?(@.price < 10)]}: the values of an array or object that match a filter, the path after
+ *     {@code @} can be any path like {@code @['a b'][0]}, the operators are
+ *     {@code == != < <= > >=} and the values numbers, strings in single or double quotes, {@code true},
+ *     {@code false} and {@code null}. Without an operator like in {@code [?(@.enabled)]}, the values match if the
+ *     path exists and isn't {@code null} or {@code false}.</li>
+ * </ul>
+ * Paths are compiled once by {@link #compile(String)} and cached. Selecting the first match walks the Gson tree
+ * directly and doesn't allocate anything for paths without wildcards, filters and {@code ..}. Only the value of the
+ * first key is read through the document, which is free for the {@link DefaultDocument}, but other documents create
+ * it: the {@link ConcurrentDocument} copies objects and arrays, the {@link ImmutableDocument} and the
+ * {@link PrimitiveDocument} convert their values to Gson elements. Paths that don't start with a key read the whole
+ * document with {@link Document#toJsonObject()}, which these documents create as a copy.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public final class DocumentPath {
+
+    private static final int MAX_CACHED_PATHS = 4096;
+    private static final Map<String, DocumentPath> CACHE = new ConcurrentHashMap<>();
+
+    private final String path;
+    private final Segment[] segments;
+
+    private DocumentPath(String path, Segment[] segments) {
+        this.path = path;
+        this.segments = segments;
+    }
+
+    /**
+     * Compiles the given path or returns the cached instance of an earlier call.
+     *
+     * @throws IllegalArgumentException if the path is malformed
+     */
+    public static DocumentPath compile(String path) {
+        DocumentPath compiled = CACHE.get(path);
+        if (compiled == null) {
+            compiled = new Parser(path).parse();
+            if (CACHE.size() < MAX_CACHED_PATHS) {
+                CACHE.put(path, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * @return the first value matching this path in the given document or {@code null} if there is none
+     */
+    public JsonElement select(Document document) {
+        if (this.segments.length != 0 && this.segments[0].type == Segment.NAME) {
+            // only the first key is read through the document, so that e.g. lazy documents don't parse everything
+            JsonElement element = document.get(this.segments[0].name);
+            return element == null ? null : this.first(element, 1);
+        }
+        return this.first(document.toJsonObject(), 0);
+    }
+
+    public JsonElement select(JsonElement root) {
+        return this.first(root, 0);
+    }
+
+    /**
+     * @return all values matching this path in the given document in the order of the document
+     */
+    public List<JsonElement> selectAll(Document document) {
+        List<JsonElement> result = new ArrayList<>();
+        if (this.segments.length != 0 && this.segments[0].type == Segment.NAME) {
+            JsonElement element = document.get(this.segments[0].name);
+            if (element != null) {
+                this.all(element, 1, result);
+            }
+        } else {
+            this.all(document.toJsonObject(), 0, result);
+        }
+        return result;
+    }
+
+    public List<JsonElement> selectAll(JsonElement root) {
+        List<JsonElement> result = new ArrayList<>();
+        this.all(root, 0, result);
+        return result;
+    }
+
+    private JsonElement first(JsonElement current, int index) {
+        for (; index < this.segments.length; index++) {
+            Segment segment = this.segments[index];
+            if (segment.type == Segment.NAME) {
+                current = current.isJsonObject() ? current.getAsJsonObject().get(segment.name) : null;
+            } else if (segment.type == Segment.INDEX) {
+                current = element(current, segment.index);
+            } else {
+                return this.firstOfMany(current, index);
+            }
+
+            if (current == null) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    private JsonElement firstOfMany(JsonElement current, int index) {
+        Segment segment = this.segments[index];
+        if (segment.type == Segment.DEEP && segment.name != null) {
+            JsonElement value = current.isJsonObject() ? current.getAsJsonObject().get(segment.name) : null;
+            JsonElement result = value == null ? null : this.first(value, index + 1);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        if (current.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> entry : current.getAsJsonObject().entrySet()) {
+                JsonElement result = this.firstOfChild(entry.getValue(), index);
+                if (result != null) {
+                    return result;
+                }
+            }
+        } else if (current.isJsonArray()) {
+            JsonArray array = current.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                JsonElement result = this.firstOfChild(array.get(i), index);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    private JsonElement firstOfChild(JsonElement child, int index) {
+        Segment segment = this.segments[index];
+        if (segment.type == Segment.DEEP) {
+            if (segment.name == null) {
+                // every value matches ..*, before the values nested in it
+                JsonElement result = this.first(child, index + 1);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return this.firstOfMany(child, index);
+        } else if (segment.type == Segment.WILDCARD || segment.filter.matches(child)) {
+            return this.first(child, index + 1);
+        }
+        return null;
+    }
+
+    private void all(JsonElement current, int index, List<JsonElement> result) {
+        if (index == this.segments.length) {
+            result.add(current);
+            return;
+        }
+
+        Segment segment = this.segments[index];
+        switch (segment.type) {
+            case Segment.NAME:
+                JsonElement value = current.isJsonObject() ? current.getAsJsonObject().get(segment.name) : null;
+                if (value != null) {
+                    this.all(value, index + 1, result);
+                }
+                break;
+            case Segment.INDEX:
+                JsonElement element = element(current, segment.index);
+                if (element != null) {
+                    this.all(element, index + 1, result);
+                }
+                break;
+            default:
+                if (segment.type == Segment.DEEP && segment.name != null && current.isJsonObject()) {
+                    JsonElement deep = current.getAsJsonObject().get(segment.name);
+                    if (deep != null) {
+                        this.all(deep, index + 1, result);
+                    }
+                }
+                if (current.isJsonObject()) {
+                    for (Map.Entry<String, JsonElement> entry : current.getAsJsonObject().entrySet()) {
+                        this.allOfChild(entry.getValue(), index, result);
+                    }
+                } else if (current.isJsonArray()) {
+                    JsonArray array = current.getAsJsonArray();
+                    for (int i = 0; i < array.size(); i++) {
+                        this.allOfChild(array.get(i), index, result);
+                    }
+                }
+                break;
+        }
+    }
+
+    private void allOfChild(JsonElement child, int index, List<JsonElement> result) {
+        Segment segment = this.segments[index];
+        if (segment.type == Segment.DEEP) {
+            if (segment.name == null) {
+                this.all(child, index + 1, result);
+            }
+            this.all(child, index, result);
+        } else if (segment.type == Segment.WILDCARD || segment.filter.matches(child)) {
+            this.all(child, index + 1, result);
+        }
+    }
+
+    private static JsonElement element(JsonElement current, int index) {
+        if (!current.isJsonArray()) {
+            return null;
+        }
+        JsonArray array = current.getAsJsonArray();
+        int i = index < 0 ? array.size() + index : index;
+        return i >= 0 && i < array.size() ? array.get(i) : null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof DocumentPath && ((DocumentPath) other).path.equals(this.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.path;
+    }
+
+    private static final class Segment {
+
+        private static final int NAME = 0;
+        private static final int INDEX = 1;
+        private static final int WILDCARD = 2;
+        private static final int DEEP = 3;
+        private static final int FILTER = 4;
+
+        private final int type;
+        /**
+         * The key of {@link #NAME} and {@link #DEEP} segments, {@code null} for {@code ..*}.
+         */
+        private final String name;
+        private final int index;
+        private final Filter filter;
+
+        private Segment(int type, String name, int index, Filter filter) {
+            this.type = type;
+            this.name = name;
+            this.index = index;
+            this.filter = filter;
+        }
+
+    }
+
+    private static final class Filter {
+
+        private static final String EXISTS = "";
+
+        /**
+         * The path relative to the filtered value, {@code @} alone is an empty path.
+         */
+        private final DocumentPath path;
+        private final String operator;
+        private final JsonPrimitive value;
+
+        private Filter(DocumentPath path, String operator, JsonPrimitive value) {
+            this.path = path;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        private boolean matches(JsonElement element) {
+            JsonElement actual = this.path.first(element, 0);
+            if (this.operator == EXISTS) {
+                return actual != null && !actual.isJsonNull()
+                        && !(actual.isJsonPrimitive() && actual.getAsJsonPrimitive().isBoolean() && !actual.getAsBoolean());
+            }
+            if (actual == null) {
+                return false;
+            }
+
+            int comparison;
+            if (this.value == null) {
+                comparison = actual.isJsonNull() ? 0 : 1;
+            } else if (!actual.isJsonPrimitive()) {
+                comparison = 1;
+            } else if (this.value.isNumber() && actual.getAsJsonPrimitive().isNumber()) {
+                comparison = Double.compare(actual.getAsDouble(), this.value.getAsDouble());
+            } else if (this.value.isString() && actual.getAsJsonPrimitive().isString()) {
+                comparison = actual.getAsString().compareTo(this.value.getAsString());
+            } else if (this.value.isBoolean() && actual.getAsJsonPrimitive().isBoolean()) {
+                comparison = Boolean.compare(actual.getAsBoolean(), this.value.getAsBoolean());
+            } else {
+                // values of different types are never equal and cannot be ordered
+                return this.operator.equals("!=");
+            }
+
+            switch (this.operator) {
+                case "==":
+                    return comparison == 0;
+                case "!=":
+                    return comparison != 0;
+                case "<":
+                    return comparison < 0 && this.value != null;
+                case "<=":
+                    return comparison <= 0 && this.value != null;
+                case ">":
+                    return comparison > 0 && this.value != null;
+                default:
+                    return comparison >= 0 && this.value != null;
+            }
+        }
+
+    }
+
+    private static final class Parser {
+
+        /**
+         * The characters that end a key in the path of a filter.
+         */
+        private static final String FILTER_PATH_END = " =!<>)";
+
+        private final String path;
+        private int position;
+
+        private Parser(String path) {
+            this.path = path;
+        }
+
+        private DocumentPath parse() {
+            List<Segment> segments = new ArrayList<>();
+            if (this.peek() == '$') {
+                this.position++;
+            } else if (this.position < this.path.length() && this.peek() != '[' && this.peek() != '.') {
+                segments.add(this.name(false));
+            }
+
+            this.segments(segments, false);
+            if (this.position < this.path.length()) {
+                throw this.error("Expected '.' or '['");
+            }
+            return new DocumentPath(this.path, segments.toArray(new Segment[0]));
+        }
+
+        /**
+         * Parses segments until the end of the path or, for the relative paths of filters, until a character that
+         * doesn't start a segment.
+         */
+        private void segments(List<Segment> segments, boolean relative) {
+            while (this.position < this.path.length()) {
+                char c = this.peek();
+                if (c == '.') {
+                    this.position++;
+                    if (this.peek() == '.') {
+                        this.position++;
+                        // the name of ..* is null
+                        segments.add(new Segment(Segment.DEEP, this.name(relative).name, 0, null));
+                    } else {
+                        segments.add(this.name(relative));
+                    }
+                } else if (c == '[') {
+                    this.position++;
+                    segments.add(this.bracket());
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private Segment name(boolean relative) {
+            int start = this.position;
+            while (this.position < this.path.length() && this.peek() != '.' && this.peek() != '['
+                    && (!relative || FILTER_PATH_END.indexOf(this.peek()) == -1)) {
+                this.position++;
+            }
+            if (start == this.position) {
+                throw this.error("Expected a key");
+            }
+
+            String name = this.path.substring(start, this.position);
+            return name.equals("*") ? new Segment(Segment.WILDCARD, null, 0, null) : new Segment(Segment.NAME, name, 0, null);
+        }
+
+        private Segment bracket() {
+            Segment segment;
+            char c = this.peek();
+            if (c == '*') {
+                this.position++;
+                segment = new Segment(Segment.WILDCARD, null, 0, null);
+            } else if (c == '\'' || c == '"') {
+                segment = new Segment(Segment.NAME, this.quoted(), 0, null);
+            } else if (c == '?') {
+                segment = new Segment(Segment.FILTER, null, 0, this.filter());
+            } else {
+                int start = this.position;
+                if (c == '-') {
+                    this.position++;
+                }
+                while (this.position < this.path.length() && Character.isDigit(this.peek())) {
+                    this.position++;
+                }
+                try {
+                    segment = new Segment(Segment.INDEX, null, Integer.parseInt(this.path.substring(start, this.position)), null);
+                } catch (NumberFormatException exception) {
+                    throw this.error("Expected an index, '*', a quoted key or a filter");
+                }
+            }
+
+            this.expect(']');
+            return segment;
+        }
+
+        private Filter filter() {
+            this.expect('?');
+            this.expect('(');
+            this.skipWhitespace();
+            this.expect('@');
+
+            int start = this.position;
+            List<Segment> segments = new ArrayList<>();
+            if (this.position < this.path.length() && FILTER_PATH_END.indexOf(this.peek()) == -1
+                    && this.peek() != '.' && this.peek() != '[') {
+                // @name without a dot
+                segments.add(this.name(true));
+            }
+            this.segments(segments, true);
+            DocumentPath path = new DocumentPath(this.path.substring(start, this.position), segments.toArray(new Segment[0]));
+
+            this.skipWhitespace();
+            if (this.peek() == ')') {
+                this.position++;
+                return new Filter(path, Filter.EXISTS, null);
+            }
+
+            int operatorStart = this.position;
+            while (this.position < this.path.length() && "=!<>".indexOf(this.peek()) != -1) {
+                this.position++;
+            }
+            String operator = this.path.substring(operatorStart, this.position);
+            if (!operator.equals("==") && !operator.equals("!=") && !operator.equals("<") && !operator.equals("<=")
+                    && !operator.equals(">") && !operator.equals(">=")) {
+                throw this.error("Unknown operator '" + operator + "'");
+            }
+
+            this.skipWhitespace();
+            JsonPrimitive value = this.literal();
+            this.skipWhitespace();
+            this.expect(')');
+            return new Filter(path, operator, value);
+        }
+
+        private JsonPrimitive literal() {
+            char c = this.peek();
+            if (c == '\'' || c == '"') {
+                return new JsonPrimitive(this.quoted());
+            }
+
+            int start = this.position;
+            while (this.position < this.path.length() && this.peek() != ')' && this.peek() != ' ') {
+                this.position++;
+            }
+            String literal = this.path.substring(start, this.position);
+            switch (literal) {
+                case "true":
+                    return new JsonPrimitive(true);
+                case "false":
+                    return new JsonPrimitive(false);
+                case "null":
+                    return null;
+                default:
+                    try {
+                        return new JsonPrimitive(Double.parseDouble(literal));
+                    } catch (NumberFormatException exception) {
+                        throw this.error("Expected a number, a quoted string, true, false or null");
+                    }
+            }
+        }
+
+        private String quoted() {
+            char quote = this.path.charAt(this.position++);
+            StringBuilder builder = new StringBuilder();
+            while (this.position < this.path.length() && this.peek() != quote) {
+                char c = this.path.charAt(this.position++);
+                if (c == '\\' && this.position < this.path.length()) {
+                    c = this.path.charAt(this.position++);
+                }
+                builder.append(c);
+            }
+            this.expect(quote);
+            return builder.toString();
+        }
+
+        private void skipWhitespace() {
+            while (this.position < this.path.length() && this.peek() == ' ') {
+                this.position++;
+            }
+        }
+
+        private void expect(char expected) {
+            if (this.peek() != expected) {
+                throw this.error("Expected '" + expected + "'");
+            }
+            this.position++;
+        }
+
+        private char peek() {
+            return this.position < this.path.length() ? this.path.charAt(this.position) : 0;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + this.position + " in path " + this.path);
+        }
+
+    }
+
+}
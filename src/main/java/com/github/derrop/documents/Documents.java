@@ -1,18 +1,35 @@
 package com.github.derrop.documents;
 
+import com.github.derrop.documents.storage.BinaryDocumentStorage;
+import com.github.derrop.documents.storage.CachedDocumentStorage;
 import com.github.derrop.documents.storage.DocumentStorage;
+import com.github.derrop.documents.storage.JournalDocumentStorage;
 import com.github.derrop.documents.storage.JsonDocumentStorage;
+import com.github.derrop.documents.storage.MappedDocumentStorage;
+import com.github.derrop.documents.storage.ParallelDocumentReader;
 import com.github.derrop.documents.storage.YamlDocumentStorage;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class Documents {
 
     private static final DocumentStorage JSON = new JsonDocumentStorage();
+    private static final DocumentStorage COMPACT_JSON = new JsonDocumentStorage(newGsonBuilder().create());
     private static final DocumentStorage YAML = new YamlDocumentStorage();
+    private static final DocumentStorage BINARY = new BinaryDocumentStorage();
+    private static final DocumentStorage MAPPED_JSON = new MappedDocumentStorage(JSON);
+    private static final DocumentStorage MAPPED_YAML = new MappedDocumentStorage(YAML);
+    private static final DocumentStorage JOURNAL = new JournalDocumentStorage(JSON);
 
     public static Document newDocument() {
         return new DefaultDocument();
@@ -47,15 +64,87 @@ public class Documents {
     }
 
     public static Document newDocument(Object object) {
-        return new DefaultDocument(DefaultDocument.GSON.toJsonTree(object));
+        return new DefaultDocument(DocumentCodecs.toJsonTree(object));
+    }
+
+    public static ConcurrentDocument newConcurrentDocument() {
+        return new ConcurrentDocument();
+    }
+
+    public static ConcurrentDocument newConcurrentDocument(Document document) {
+        return new ConcurrentDocument(document);
+    }
+
+    public static ImmutableDocument newImmutableDocument() {
+        return ImmutableDocument.empty();
+    }
+
+    public static ImmutableDocument newImmutableDocument(Document document) {
+        return ImmutableDocument.copyOf(document);
+    }
+
+    public static PrimitiveDocument newPrimitiveDocument() {
+        return new PrimitiveDocument();
+    }
+
+    public static PrimitiveDocument newPrimitiveDocument(Document document) {
+        return new PrimitiveDocument(document);
+    }
+
+    public static DocumentCollection newCollection() {
+        return new DocumentCollection();
+    }
+
+    public static DocumentCollection newCollection(Collection<? extends Document> documents) {
+        return new DocumentCollection(documents);
+    }
+
+    public static DocumentCollection newCollection(JsonArray array) {
+        return new DocumentCollection(array);
+    }
+
+    public static DocumentCollection newCollection(Stream<Document> stream) {
+        return new DocumentCollection(stream);
+    }
+
+    /**
+     * Reads the JSON ({@code .json}) and YAML ({@code .yml}, {@code .yaml}) files in the given directory and its
+     * subdirectories whose paths relative to the directory match the given glob in parallel, see
+     * {@link DocumentStorage#readAll(Path, String)}. Files with other extensions are left out.
+     */
+    public static Map<Path, Document> readAll(Path directory, String glob) {
+        return ParallelDocumentReader.readAll(directory, glob, Documents::storageOf);
+    }
+
+    private static DocumentStorage storageOf(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".json")) {
+            return JSON;
+        } else if (name.endsWith(".yml") || name.endsWith(".yaml")) {
+            return YAML;
+        }
+        return null;
     }
 
     public static Document newJsonDocument(byte[] bytes) {
-        return newJsonDocument(new String(bytes, StandardCharsets.UTF_8));
+        return jsonStorage().read(bytes);
+    }
+
+    /**
+     * Creates a {@link LazyDocument} that only parses the values of the given JSON when they are accessed.
+     *
+     * @throws com.google.gson.JsonSyntaxException if the keys of the root object cannot be read
+     */
+    public static Document newLazyJsonDocument(byte[] bytes) {
+        return new LazyDocument(bytes);
     }
 
     public static Document newYamlDocument(byte[] bytes) {
-        return newYamlDocument(new String(bytes, StandardCharsets.UTF_8));
+        return yamlStorage().read(bytes);
+    }
+
+    public static Document newJsonDocument(ByteBuffer buffer) {
+        return jsonStorage().read(buffer);
     }
 
     public static Document newJsonDocument(Path path) {
@@ -78,8 +167,52 @@ public class Documents {
         return JSON;
     }
 
+    public static DocumentStorage compactJsonStorage() {
+        return COMPACT_JSON;
+    }
+
+    public static DocumentStorage jsonStorage(Gson gson) {
+        return new JsonDocumentStorage(gson);
+    }
+
+    public static GsonBuilder newGsonBuilder() {
+        return DefaultDocument.newGsonBuilder();
+    }
+
     public static DocumentStorage yamlStorage() {
         return YAML;
     }
 
+    public static DocumentStorage binaryStorage() {
+        return BINARY;
+    }
+
+    public static DocumentStorage mappedJsonStorage() {
+        return MAPPED_JSON;
+    }
+
+    public static DocumentStorage mappedYamlStorage() {
+        return MAPPED_YAML;
+    }
+
+    /**
+     * @return a storage that only appends the changed keys to a journal next to the JSON file when a document is
+     * written, see {@link JournalDocumentStorage}
+     */
+    public static DocumentStorage journalStorage() {
+        return JOURNAL;
+    }
+
+    public static DocumentStorage journalStorage(DocumentStorage storage) {
+        return new JournalDocumentStorage(storage);
+    }
+
+    /**
+     * @return a storage that keeps the documents read from files by the given storage in memory until the files are
+     * changed, see {@link CachedDocumentStorage}
+     */
+    public static CachedDocumentStorage cachedStorage(DocumentStorage storage) {
+        return new CachedDocumentStorage(storage);
+    }
+
 }
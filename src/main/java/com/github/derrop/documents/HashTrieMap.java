@@ -0,0 +1,300 @@
+package com.github.derrop.documents;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A persistent hash array mapped trie: every update returns a new map that shares all nodes except the ones on the
+ * path to the updated key with the previous one, so updates cost O(log32 n) and old versions stay valid.
+ * <p>
+ * Instances are immutable and can be shared between threads without synchronization.
+ */
+final class HashTrieMap<V> {
+
+    private static final HashTrieMap<?> EMPTY = new HashTrieMap<>(BitmapNode.empty(), 0);
+
+    private final Node<V> root;
+    private final int size;
+
+    private HashTrieMap(Node<V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> HashTrieMap<V> empty() {
+        return (HashTrieMap<V>) EMPTY;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    V get(String key) {
+        return this.root.get(key, hash(key), 0);
+    }
+
+    HashTrieMap<V> put(String key, V value) {
+        boolean[] added = new boolean[1];
+        Node<V> root = this.root.put(key, hash(key), 0, value, added);
+        return root == this.root ? this : new HashTrieMap<>(root, added[0] ? this.size + 1 : this.size);
+    }
+
+    HashTrieMap<V> remove(String key) {
+        Node<V> root = this.root.remove(key, hash(key), 0);
+        if (root == this.root) {
+            return this;
+        }
+        return root == null ? empty() : new HashTrieMap<>(root, this.size - 1);
+    }
+
+    void forEach(BiConsumer<String, V> consumer) {
+        this.root.forEach(consumer);
+    }
+
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private abstract static class Node<V> {
+
+        abstract V get(String key, int hash, int shift);
+
+        abstract Node<V> put(String key, int hash, int shift, V value, boolean[] added);
+
+        /**
+         * @return the node without the key, {@code null} if the node is empty afterwards
+         */
+        abstract Node<V> remove(String key, int hash, int shift);
+
+        abstract void forEach(BiConsumer<String, V> consumer);
+
+    }
+
+    /**
+     * Up to 32 slots selected by 5 bits of the hash, only the used slots are stored. Each slot is a key and a value
+     * or {@code null} and the child node for keys that share these bits.
+     */
+    private static final class BitmapNode<V> extends Node<V> {
+
+        private static final BitmapNode<?> EMPTY = new BitmapNode<>(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        private BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> BitmapNode<V> empty() {
+            return (BitmapNode<V>) EMPTY;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        V get(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return null;
+            }
+
+            int index = this.index(bit);
+            Object slotKey = this.slots[index];
+            Object slotValue = this.slots[index + 1];
+            if (slotKey == null) {
+                return ((Node<V>) slotValue).get(key, hash, shift + 5);
+            }
+            return key.equals(slotKey) ? (V) slotValue : null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<V> put(String key, int hash, int shift, V value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = this.index(bit);
+
+            if ((this.bitmap & bit) == 0) {
+                Object[] slots = new Object[this.slots.length + 2];
+                System.arraycopy(this.slots, 0, slots, 0, index);
+                slots[index] = key;
+                slots[index + 1] = value;
+                System.arraycopy(this.slots, index, slots, index + 2, this.slots.length - index);
+                added[0] = true;
+                return new BitmapNode<>(this.bitmap | bit, slots);
+            }
+
+            Object slotKey = this.slots[index];
+            Object slotValue = this.slots[index + 1];
+            if (slotKey == null) {
+                Node<V> child = (Node<V>) slotValue;
+                Node<V> updated = child.put(key, hash, shift + 5, value, added);
+                return updated == child ? this : this.with(index, null, updated);
+            }
+            if (key.equals(slotKey)) {
+                return slotValue == value ? this : this.with(index, slotKey, value);
+            }
+
+            added[0] = true;
+            return this.with(index, null, split((String) slotKey, (V) slotValue, key, hash, value, shift + 5));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<V> remove(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return this;
+            }
+
+            int index = this.index(bit);
+            Object slotKey = this.slots[index];
+            if (slotKey == null) {
+                Node<V> child = (Node<V>) this.slots[index + 1];
+                Node<V> updated = child.remove(key, hash, shift + 5);
+                if (updated == child) {
+                    return this;
+                }
+                return updated == null ? this.without(bit, index) : this.with(index, null, updated);
+            }
+            return key.equals(slotKey) ? this.without(bit, index) : this;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void forEach(BiConsumer<String, V> consumer) {
+            for (int i = 0; i < this.slots.length; i += 2) {
+                if (this.slots[i] == null) {
+                    ((Node<V>) this.slots[i + 1]).forEach(consumer);
+                } else {
+                    consumer.accept((String) this.slots[i], (V) this.slots[i + 1]);
+                }
+            }
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1)) * 2;
+        }
+
+        private BitmapNode<V> with(int index, Object key, Object value) {
+            Object[] slots = this.slots.clone();
+            slots[index] = key;
+            slots[index + 1] = value;
+            return new BitmapNode<>(this.bitmap, slots);
+        }
+
+        private BitmapNode<V> without(int bit, int index) {
+            if (this.bitmap == bit) {
+                return null;
+            }
+
+            Object[] slots = new Object[this.slots.length - 2];
+            System.arraycopy(this.slots, 0, slots, 0, index);
+            System.arraycopy(this.slots, index + 2, slots, index, slots.length - index);
+            return new BitmapNode<>(this.bitmap ^ bit, slots);
+        }
+
+        private static <V> Node<V> split(String firstKey, V firstValue, String secondKey, int secondHash, V secondValue, int shift) {
+            int firstHash = hash(firstKey);
+            if (firstHash == secondHash) {
+                return new CollisionNode<>(firstHash, new Object[]{firstKey, firstValue, secondKey, secondValue});
+            }
+
+            boolean[] added = new boolean[1];
+            return BitmapNode.<V>empty()
+                    .put(firstKey, firstHash, shift, firstValue, added)
+                    .put(secondKey, secondHash, shift, secondValue, added);
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+    }
+
+    /**
+     * Keys with exactly the same hash, searched linearly.
+     */
+    private static final class CollisionNode<V> extends Node<V> {
+
+        private final int hash;
+        private final Object[] entries;
+
+        private CollisionNode(int hash, Object[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        V get(String key, int hash, int shift) {
+            int index = this.indexOf(key, hash);
+            return index == -1 ? null : (V) this.entries[index + 1];
+        }
+
+        @Override
+        Node<V> put(String key, int hash, int shift, V value, boolean[] added) {
+            if (hash != this.hash) {
+                // a different hash at this depth, move this node one level down next to the new key
+                Object[] slots = {null, this};
+                return new BitmapNode<V>(BitmapNode.bit(this.hash, shift), slots).put(key, hash, shift, value, added);
+            }
+
+            int index = this.indexOf(key, hash);
+            if (index != -1) {
+                if (this.entries[index + 1] == value) {
+                    return this;
+                }
+                Object[] entries = this.entries.clone();
+                entries[index + 1] = value;
+                return new CollisionNode<>(this.hash, entries);
+            }
+
+            Object[] entries = new Object[this.entries.length + 2];
+            System.arraycopy(this.entries, 0, entries, 0, this.entries.length);
+            entries[this.entries.length] = key;
+            entries[this.entries.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode<>(this.hash, entries);
+        }
+
+        @Override
+        Node<V> remove(String key, int hash, int shift) {
+            int index = this.indexOf(key, hash);
+            if (index == -1) {
+                return this;
+            }
+            if (this.entries.length == 2) {
+                return null;
+            }
+
+            Object[] entries = new Object[this.entries.length - 2];
+            System.arraycopy(this.entries, 0, entries, 0, index);
+            System.arraycopy(this.entries, index + 2, entries, index, entries.length - index);
+            return new CollisionNode<>(this.hash, entries);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void forEach(BiConsumer<String, V> consumer) {
+            for (int i = 0; i < this.entries.length; i += 2) {
+                consumer.accept((String) this.entries[i], (V) this.entries[i + 1]);
+            }
+        }
+
+        private int indexOf(String key, int hash) {
+            if (hash != this.hash) {
+                return -1;
+            }
+            for (int i = 0; i < this.entries.length; i += 2) {
+                if (key.equals(this.entries[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A document that cannot be modified, backed by a persistent hash trie. {@link #with(String, Object)} and
+ * {@link #without(String)} return a new version that shares everything but the path to the changed key with this
+ * one, so they cost O(log n) instead of a copy of the whole tree.
+ * <p>
+ * Nested objects are immutable documents as well and {@link #getDocument(String)} returns them without copying.
+ * Methods that return Gson trees like {@link #get(String)} or {@link #toJsonObject()} create new trees on every call.
+ * The {@code append}, {@code remove} and {@code clear} methods throw an {@link UnsupportedOperationException}, the
+ * getters with a default value return the default instead of adding it.
+ * <p>
+ * Instances can be shared between threads without any synchronization. The order of the keys is not preserved.
+ */
+public final class ImmutableDocument extends AbstractDocument<ImmutableDocument> {
+
+    private static final ImmutableDocument EMPTY = new ImmutableDocument(HashTrieMap.empty());
+
+    /**
+     * Values are either primitives, {@link JsonNull}, {@link JsonBinary}s and arrays that are copied when they are
+     * added and returned, or other immutable documents for objects.
+     */
+    private final HashTrieMap<Object> entries;
+
+    private ImmutableDocument(HashTrieMap<Object> entries) {
+        this.entries = entries;
+    }
+
+    public static ImmutableDocument empty() {
+        return EMPTY;
+    }
+
+    public static ImmutableDocument copyOf(Document document) {
+        return document instanceof ImmutableDocument ? (ImmutableDocument) document : copyOf(document.toJsonObject());
+    }
+
+    public static ImmutableDocument copyOf(JsonObject jsonObject) {
+        ImmutableDocument document = EMPTY;
+        for (String key : jsonObject.keySet()) {
+            document = document.with(key, jsonObject.get(key));
+        }
+        return document;
+    }
+
+    /**
+     * @return a new version of this document with the given value, converted like {@link #append(String, Object)}
+     * would do it
+     */
+    public ImmutableDocument with(String key, Object value) {
+        if (key == null || value == null) {
+            return this;
+        }
+
+        if (value instanceof ImmutableDocument) {
+            return new ImmutableDocument(this.entries.put(key, value));
+        } else if (value instanceof Document) {
+            return this.with(key, ((Document) value).toJsonObject());
+        } else if (value instanceof byte[]) {
+            return this.with(key, new JsonBinary((byte[]) value));
+        } else if (value instanceof JsonElement) {
+            return new ImmutableDocument(this.entries.put(key, freeze((JsonElement) value)));
+        } else if (value instanceof String) {
+            return new ImmutableDocument(this.entries.put(key, new JsonPrimitive((String) value)));
+        } else if (value instanceof Number) {
+            return new ImmutableDocument(this.entries.put(key, new JsonPrimitive((Number) value)));
+        } else if (value instanceof Boolean) {
+            return new ImmutableDocument(this.entries.put(key, new JsonPrimitive((Boolean) value)));
+        } else {
+            return this.with(key, DocumentCodecs.toJsonTree(value));
+        }
+    }
+
+    /**
+     * @return a new version of this document without the given key
+     */
+    public ImmutableDocument without(String key) {
+        return key == null ? this : new ImmutableDocument(this.entries.remove(key));
+    }
+
+    private static Object freeze(JsonElement element) {
+        if (element instanceof JsonRawValue) {
+            // documents only contain raw values at the root, toJsonObject() parses them
+            throw new IllegalArgumentException("Unparsed values cannot be added, use the result of toJsonObject()");
+        } else if (element.isJsonObject()) {
+            return copyOf(element.getAsJsonObject());
+        } else if (element.isJsonArray() || element instanceof JsonBinary) {
+            // the bytes of binaries can be modified through getBytes()
+            return element.deepCopy();
+        } else {
+            return element;
+        }
+    }
+
+    private static JsonElement thaw(Object value) {
+        if (value instanceof ImmutableDocument) {
+            return ((ImmutableDocument) value).toJsonObject();
+        }
+        JsonElement element = (JsonElement) value;
+        return element.isJsonArray() || element instanceof JsonBinary ? element.deepCopy() : element;
+    }
+
+    @Override
+    protected void put(String key, JsonElement value) {
+        throw new UnsupportedOperationException("ImmutableDocument cannot be modified, use with(key, value)");
+    }
+
+    @Override
+    protected ImmutableDocument newDocument(JsonObject jsonObject) {
+        return copyOf(jsonObject);
+    }
+
+    @Override
+    public ImmutableDocument remove(String key) {
+        throw new UnsupportedOperationException("ImmutableDocument cannot be modified, use without(key)");
+    }
+
+    @Override
+    public ImmutableDocument clear() {
+        throw new UnsupportedOperationException("ImmutableDocument cannot be modified, use ImmutableDocument.empty()");
+    }
+
+    @Override
+    public Collection<String> keys() {
+        List<String> keys = new ArrayList<>(this.entries.size());
+        this.entries.forEach((key, value) -> keys.add(key));
+        return Collections.unmodifiableList(keys);
+    }
+
+    @Override
+    public int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return key != null && this.entries.get(key) != null;
+    }
+
+    @Override
+    public JsonElement get(String key) {
+        if (key == null) {
+            return null;
+        }
+
+        Object value = this.entries.get(key);
+        return value == null ? null : thaw(value);
+    }
+
+    @Override
+    public ImmutableDocument getDocument(String key) {
+        Object value = key == null ? null : this.entries.get(key);
+        return value instanceof ImmutableDocument ? (ImmutableDocument) value : null;
+    }
+
+    @Override
+    public JsonObject toJsonObject() {
+        JsonObject jsonObject = new JsonObject();
+        this.entries.forEach((key, value) -> jsonObject.add(key, thaw(value)));
+        return jsonObject;
+    }
+
+    @Override
+    public Integer getInt(String key, Integer def) {
+        return this.contains(key) ? this.getInt(key) : def;
+    }
+
+    @Override
+    public Short getShort(String key, Short def) {
+        return this.contains(key) ? this.getShort(key) : def;
+    }
+
+    @Override
+    public Boolean getBoolean(String key, Boolean def) {
+        return this.contains(key) ? this.getBoolean(key) : def;
+    }
+
+    @Override
+    public Long getLong(String key, Long def) {
+        return this.contains(key) ? this.getLong(key) : def;
+    }
+
+    @Override
+    public Double getDouble(String key, Double def) {
+        return this.contains(key) ? this.getDouble(key) : def;
+    }
+
+    @Override
+    public Float getFloat(String key, Float def) {
+        return this.contains(key) ? this.getFloat(key) : def;
+    }
+
+    @Override
+    public String getString(String key, String def) {
+        return this.contains(key) ? this.getString(key) : def;
+    }
+
+    @Override
+    public ImmutableDocument getDocument(String key, Document def) {
+        return this.contains(key) ? this.getDocument(key) : def == null ? null : copyOf(def);
+    }
+
+    @Override
+    public Collection<Document> getDocuments(String key, Collection<Document> def) {
+        return this.contains(key) ? this.getDocuments(key) : def;
+    }
+
+    @Override
+    public JsonArray getJsonArray(String key, JsonArray def) {
+        return this.contains(key) ? this.getJsonArray(key) : def;
+    }
+
+    @Override
+    public JsonObject getJsonObject(String key, JsonObject def) {
+        return this.contains(key) ? this.getJsonObject(key) : def;
+    }
+
+    @Override
+    public byte[] getBinary(String key, byte[] def) {
+        return this.contains(key) ? this.getBinary(key) : def;
+    }
+
+    @Override
+    public <T> T get(String key, Type type, T def) {
+        return this.contains(key) ? this.get(key, type) : def;
+    }
+
+    @Override
+    public <T> T get(String key, Class<T> clazz, T def) {
+        return this.contains(key) ? this.get(key, clazz) : def;
+    }
+
+    @Override
+    public Properties getProperties(String key, Properties def) {
+        return this.contains(key) ? this.getProperties(key) : def;
+    }
+
+    @Override
+    public BigInteger getBigInteger(String key, BigInteger def) {
+        return this.contains(key) ? this.getBigInteger(key) : def;
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String key, BigDecimal def) {
+        return this.contains(key) ? this.getBigDecimal(key) : def;
+    }
+
+    @Override
+    public Character getChar(String key, Character def) {
+        return this.contains(key) ? this.getChar(key) : def;
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * A raw binary value inside of a document, created by {@link Document#append(String, byte[])}.
+ * <p>
+ * The bytes are kept as they are and only encoded to Base64 when the document is written as JSON or YAML, the
+ * binary storage and {@link Document#getBinary(String)} use them directly. The array is neither copied when the
+ * value is created nor when it is returned.
+ * <p>
+ * To everything else the value looks like the Base64 string it is written as: {@link #isJsonPrimitive()} returns
+ * {@code true} and {@link #getAsJsonPrimitive()} returns the string, so trees containing it can be printed and
+ * written by Gson itself, e.g. with {@link JsonElement#toString()} or {@link com.google.gson.Gson#toJson(JsonElement)}.
+ * Only reading objects from such a tree with {@link com.google.gson.Gson#fromJson(JsonElement, Class)} doesn't work,
+ * as Gson checks the classes of the elements there, {@link Document#toInstanceOf(Class)} handles this.
+ */
+public final class JsonBinary extends JsonElement {
+
+    private final byte[] bytes;
+
+    public JsonBinary(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+
+    @Override
+    public JsonBinary deepCopy() {
+        return new JsonBinary(this.bytes.clone());
+    }
+
+    @Override
+    public boolean isJsonPrimitive() {
+        return true;
+    }
+
+    /**
+     * @return a new primitive with the Base64 string of the bytes
+     */
+    @Override
+    public JsonPrimitive getAsJsonPrimitive() {
+        return new JsonPrimitive(this.getAsString());
+    }
+
+    @Override
+    public String getAsString() {
+        return Base64.getEncoder().encodeToString(this.bytes);
+    }
+
+    @Override
+    public boolean getAsBoolean() {
+        return this.getAsJsonPrimitive().getAsBoolean();
+    }
+
+    @Override
+    public Number getAsNumber() {
+        return this.getAsJsonPrimitive().getAsNumber();
+    }
+
+    @Override
+    public double getAsDouble() {
+        return this.getAsJsonPrimitive().getAsDouble();
+    }
+
+    @Override
+    public float getAsFloat() {
+        return this.getAsJsonPrimitive().getAsFloat();
+    }
+
+    @Override
+    public long getAsLong() {
+        return this.getAsJsonPrimitive().getAsLong();
+    }
+
+    @Override
+    public int getAsInt() {
+        return this.getAsJsonPrimitive().getAsInt();
+    }
+
+    @Override
+    public byte getAsByte() {
+        return this.getAsJsonPrimitive().getAsByte();
+    }
+
+    @Override
+    @Deprecated
+    public char getAsCharacter() {
+        return this.getAsJsonPrimitive().getAsCharacter();
+    }
+
+    @Override
+    public BigDecimal getAsBigDecimal() {
+        return this.getAsJsonPrimitive().getAsBigDecimal();
+    }
+
+    @Override
+    public BigInteger getAsBigInteger() {
+        return this.getAsJsonPrimitive().getAsBigInteger();
+    }
+
+    @Override
+    public short getAsShort() {
+        return this.getAsJsonPrimitive().getAsShort();
+    }
+
+    @Override
+    public String toString() {
+        return '"' + this.getAsString() + '"';
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || (other instanceof JsonBinary && Arrays.equals(this.bytes, ((JsonBinary) other).bytes));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.bytes);
+    }
+
+}
@@ -0,0 +1,406 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A JSON Patch (RFC 6902), a list of operations that change one document into another one. Patches can be created
+ * from the difference of two documents with {@link #diff(Document, Document)}, from the changes of a
+ * {@link DefaultDocument} with {@link DefaultDocument#getChanges()} or read from their JSON representation.
+ * <p>
+ * Because storages only read and write objects, {@link #toDocument()} wraps the operations into a document with the
+ * key {@code operations} that can be written in every format and read again with {@link #fromDocument(Document)}.
+ * <p>
+ * Applying a patch is atomic, if an operation fails the document is not changed at all. Operations that refer to
+ * values that don't exist and failing {@code test} operations throw an {@link IllegalStateException}, malformed
+ * operations an {@link IllegalArgumentException}.
+ */
+public final class JsonPatch {
+
+    private final JsonArray operations;
+
+    private JsonPatch(JsonArray operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * Creates a patch from the given array of operations, the array is not copied.
+     */
+    public static JsonPatch fromJson(JsonArray operations) {
+        return new JsonPatch(operations);
+    }
+
+    /**
+     * Reads a patch from a document created by {@link #toDocument()}.
+     */
+    public static JsonPatch fromDocument(Document document) {
+        JsonArray operations = document.getJsonArray("operations");
+        if (operations == null) {
+            throw new IllegalArgumentException("The document doesn't contain a patch");
+        }
+        return new JsonPatch(operations);
+    }
+
+    /**
+     * @return the operations that change the source document into the target document
+     */
+    public static JsonPatch diff(Document source, Document target) {
+        return diff(source.toJsonObject(), target.toJsonObject());
+    }
+
+    public static JsonPatch diff(JsonElement source, JsonElement target) {
+        JsonArray operations = new JsonArray();
+        diff("", source, target, operations);
+        return new JsonPatch(operations);
+    }
+
+    /**
+     * Adds the operations that change the source value at the given pointer into the target value to the given array.
+     * Changed arrays are compared index by index, so inserting an element at the start replaces all following ones.
+     */
+    static void diff(String path, JsonElement source, JsonElement target, JsonArray operations) {
+        if (source.equals(target)) {
+            return;
+        }
+
+        if (source.isJsonObject() && target.isJsonObject()) {
+            JsonObject sourceObject = source.getAsJsonObject();
+            JsonObject targetObject = target.getAsJsonObject();
+            for (Map.Entry<String, JsonElement> entry : sourceObject.entrySet()) {
+                if (!targetObject.has(entry.getKey())) {
+                    operations.add(operation("remove", path + '/' + escape(entry.getKey()), null));
+                }
+            }
+            for (Map.Entry<String, JsonElement> entry : targetObject.entrySet()) {
+                JsonElement sourceValue = sourceObject.get(entry.getKey());
+                String childPath = path + '/' + escape(entry.getKey());
+                if (sourceValue == null) {
+                    operations.add(operation("add", childPath, entry.getValue().deepCopy()));
+                } else {
+                    diff(childPath, sourceValue, entry.getValue(), operations);
+                }
+            }
+        } else if (source.isJsonArray() && target.isJsonArray()) {
+            JsonArray sourceArray = source.getAsJsonArray();
+            JsonArray targetArray = target.getAsJsonArray();
+            int common = Math.min(sourceArray.size(), targetArray.size());
+            for (int i = 0; i < common; i++) {
+                diff(path + '/' + i, sourceArray.get(i), targetArray.get(i), operations);
+            }
+            for (int i = sourceArray.size() - 1; i >= common; i--) {
+                operations.add(operation("remove", path + '/' + i, null));
+            }
+            for (int i = common; i < targetArray.size(); i++) {
+                operations.add(operation("add", path + '/' + i, targetArray.get(i).deepCopy()));
+            }
+        } else {
+            operations.add(operation("replace", path, target.deepCopy()));
+        }
+    }
+
+    static JsonObject operation(String op, String path, JsonElement value) {
+        JsonObject operation = new JsonObject();
+        operation.addProperty("op", op);
+        operation.addProperty("path", path);
+        if (value != null) {
+            operation.add("value", value);
+        }
+        return operation;
+    }
+
+    /**
+     * Escapes a key for a JSON Pointer.
+     */
+    static String escape(String key) {
+        if (key.indexOf('~') == -1 && key.indexOf('/') == -1) {
+            return key;
+        }
+        return key.replace("~", "~0").replace("/", "~1");
+    }
+
+    public int size() {
+        return this.operations.size();
+    }
+
+    public boolean isEmpty() {
+        return this.operations.size() == 0;
+    }
+
+    public JsonArray toJsonArray() {
+        return this.operations.deepCopy();
+    }
+
+    public Document toDocument() {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.add("operations", this.operations.deepCopy());
+        return new DefaultDocument(jsonObject);
+    }
+
+    /**
+     * Applies this patch to the given document. Only the top level values that are affected by the patch are copied and
+     * put into the document again, so changes are recorded if the document {@link DefaultDocument#trackChanges()
+     * tracks} them.
+     *
+     * @return the given document
+     */
+    public <D extends Document> D apply(D document) {
+        JsonObject root = document.toJsonObject();
+        JsonObject working = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : root.entrySet()) {
+            working.add(entry.getKey(), entry.getValue());
+        }
+
+        Set<String> copied = new HashSet<>();
+        boolean replacedRoot = false;
+        JsonElement result = working;
+        for (JsonElement element : this.operations) {
+            JsonObject operation = element.isJsonObject() ? element.getAsJsonObject() : null;
+            if (operation == null) {
+                throw new IllegalArgumentException("Operations have to be objects: " + element);
+            }
+
+            // copy the top level values before they are changed, test and the source of copy only read them
+            String op = string(operation, "op");
+            for (String member : new String[]{"path", "from"}) {
+                if (op.equals("test") || (member.equals("from") && !op.equals("move")) || !operation.has(member)) {
+                    continue;
+                }
+                List<String> tokens = parsePointer(string(operation, member));
+                if (tokens.isEmpty()) {
+                    replacedRoot = true;
+                } else if (result == working && copied.add(tokens.get(0)) && working.has(tokens.get(0))) {
+                    working.add(tokens.get(0), working.get(tokens.get(0)).deepCopy());
+                }
+            }
+            result = applyOperation(result, operation);
+        }
+
+        if (!result.isJsonObject()) {
+            throw new IllegalStateException("The patch replaces the document with " + result);
+        }
+        JsonObject patched = result.getAsJsonObject();
+
+        Set<String> changed = replacedRoot ? new HashSet<>(root.keySet()) : copied;
+        if (replacedRoot) {
+            changed.addAll(patched.keySet());
+        }
+        for (String key : changed) {
+            JsonElement value = patched.get(key);
+            if (value == null) {
+                document.remove(key);
+            } else {
+                put(document, key, value);
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Applies this patch to a copy of the given value.
+     *
+     * @return the patched copy
+     */
+    public JsonElement apply(JsonElement value) {
+        JsonElement result = value.deepCopy();
+        for (JsonElement operation : this.operations) {
+            if (!operation.isJsonObject()) {
+                throw new IllegalArgumentException("Operations have to be objects: " + operation);
+            }
+            result = applyOperation(result, operation.getAsJsonObject());
+        }
+        return result;
+    }
+
+    static void put(Document document, String key, JsonElement value) {
+        if (document instanceof AbstractDocument) {
+            ((AbstractDocument<?>) document).put(key, value);
+        } else {
+            document.append(key, (Object) value);
+        }
+    }
+
+    /**
+     * @return the new root
+     */
+    private static JsonElement applyOperation(JsonElement root, JsonObject operation) {
+        String op = string(operation, "op");
+        List<String> path = parsePointer(string(operation, "path"));
+        switch (op) {
+            case "add":
+                return add(root, path, value(operation).deepCopy());
+            case "remove":
+                remove(root, path);
+                return root;
+            case "replace": {
+                JsonElement value = value(operation).deepCopy();
+                if (path.isEmpty()) {
+                    return value;
+                }
+                JsonElement parent = get(root, path.subList(0, path.size() - 1), true);
+                String token = path.get(path.size() - 1);
+                if (parent.isJsonObject() && parent.getAsJsonObject().has(token)) {
+                    // keeps the position of the key
+                    parent.getAsJsonObject().add(token, value);
+                } else if (parent.isJsonArray()) {
+                    parent.getAsJsonArray().set(index(token, parent.getAsJsonArray().size()), value);
+                } else {
+                    throw new IllegalStateException("There is no value at " + string(operation, "path"));
+                }
+                return root;
+            }
+            case "move": {
+                String fromPointer = string(operation, "from");
+                String pathPointer = string(operation, "path");
+                if (pathPointer.startsWith(fromPointer + '/')) {
+                    throw new IllegalArgumentException("Cannot move " + fromPointer + " into one of its children");
+                }
+                List<String> from = parsePointer(fromPointer);
+                JsonElement value = get(root, from, true);
+                if (from.isEmpty()) {
+                    return value;
+                }
+                remove(root, from);
+                return add(root, path, value);
+            }
+            case "copy":
+                return add(root, path, get(root, parsePointer(string(operation, "from")), true).deepCopy());
+            case "test":
+                if (!get(root, path, true).equals(value(operation))) {
+                    throw new IllegalStateException("Test of " + string(operation, "path") + " failed");
+                }
+                return root;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + op);
+        }
+    }
+
+    private static JsonElement add(JsonElement root, List<String> path, JsonElement value) {
+        if (path.isEmpty()) {
+            return value;
+        }
+
+        JsonElement parent = get(root, path.subList(0, path.size() - 1), true);
+        String token = path.get(path.size() - 1);
+        if (parent.isJsonObject()) {
+            parent.getAsJsonObject().add(token, value);
+        } else if (parent.isJsonArray()) {
+            JsonArray array = parent.getAsJsonArray();
+            int index = token.equals("-") ? array.size() : index(token, array.size() + 1);
+            array.add(value);
+            for (int i = array.size() - 1; i > index; i--) {
+                array.set(i, array.get(i - 1));
+            }
+            array.set(index, value);
+        } else {
+            throw new IllegalStateException("Cannot add " + token + " to " + parent);
+        }
+        return root;
+    }
+
+    private static void remove(JsonElement root, List<String> path) {
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("Cannot remove the root");
+        }
+
+        JsonElement parent = get(root, path.subList(0, path.size() - 1), true);
+        String token = path.get(path.size() - 1);
+        if (parent.isJsonObject() && parent.getAsJsonObject().has(token)) {
+            parent.getAsJsonObject().remove(token);
+        } else if (parent.isJsonArray()) {
+            parent.getAsJsonArray().remove(index(token, parent.getAsJsonArray().size()));
+        } else {
+            throw new IllegalStateException("Cannot remove " + token + " from " + parent);
+        }
+    }
+
+    private static JsonElement get(JsonElement root, List<String> path, boolean required) {
+        JsonElement current = root;
+        for (String token : path) {
+            if (current.isJsonObject()) {
+                current = current.getAsJsonObject().get(token);
+            } else if (current.isJsonArray()) {
+                current = current.getAsJsonArray().get(index(token, current.getAsJsonArray().size()));
+            } else {
+                current = null;
+            }
+
+            if (current == null) {
+                if (required) {
+                    throw new IllegalStateException("There is no value at /" + String.join("/", path));
+                }
+                return null;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param limit the exclusive upper bound of the index
+     */
+    private static int index(String token, int limit) {
+        if (token.isEmpty() || token.length() > 10 || (token.length() > 1 && token.charAt(0) == '0')) {
+            throw new IllegalStateException("Invalid array index " + token);
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+                throw new IllegalStateException("Invalid array index " + token);
+            }
+        }
+
+        long index = Long.parseLong(token);
+        if (index >= limit) {
+            throw new IllegalStateException("Array index " + token + " is out of bounds");
+        }
+        return (int) index;
+    }
+
+    private static List<String> parsePointer(String pointer) {
+        List<String> tokens = new ArrayList<>();
+        if (pointer.isEmpty()) {
+            return tokens;
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new IllegalArgumentException("JSON Pointers have to start with '/': " + pointer);
+        }
+
+        int start = 1;
+        while (true) {
+            int end = pointer.indexOf('/', start);
+            String token = pointer.substring(start, end == -1 ? pointer.length() : end);
+            tokens.add(token.indexOf('~') == -1 ? token : token.replace("~1", "/").replace("~0", "~"));
+            if (end == -1) {
+                return tokens;
+            }
+            start = end + 1;
+        }
+    }
+
+    private static String string(JsonObject operation, String member) {
+        JsonElement element = operation.get(member);
+        if (element == null || !element.isJsonPrimitive() || !element.getAsJsonPrimitive().isString()) {
+            throw new IllegalArgumentException("Missing '" + member + "' in " + operation);
+        }
+        return element.getAsString();
+    }
+
+    private static JsonElement value(JsonObject operation) {
+        JsonElement value = operation.get("value");
+        if (value == null) {
+            throw new IllegalArgumentException("Missing 'value' in " + operation);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return this.operations.toString();
+    }
+
+}
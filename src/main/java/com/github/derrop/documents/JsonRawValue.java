@@ -0,0 +1,242 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A value of a {@link LazyDocument} that hasn't been parsed yet, it only points to the UTF-8 encoded JSON of the
+ * value in the input array.
+ * <p>
+ * {@link DefaultDocument#ELEMENT_ADAPTER} writes the bytes as they are if they are formatted exactly like the
+ * {@link JsonWriter} would format the parsed value, e.g. compact values into a compact writer, otherwise the value
+ * is parsed and written again. The value is not checked to be valid JSON, {@link LazyDocument}s only create raw
+ * values whose structure has been validated.
+ */
+public final class JsonRawValue extends JsonElement {
+
+    /**
+     * Containers nested deeper than this are always written again, the types of the open containers are kept in the
+     * bits of a long.
+     */
+    private static final int MAX_CHECKED_DEPTH = 64;
+
+    // JsonWriter has no getters for its formatting, it is written again if they can't be read
+    private static final Field INDENT = writerField("indent");
+    private static final Field STACK_SIZE = writerField("stackSize");
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    public JsonRawValue(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+
+    public int getOffset() {
+        return this.offset;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    @Override
+    public JsonRawValue deepCopy() {
+        // the array is never modified, so there is nothing to copy
+        return this;
+    }
+
+    /**
+     * @return whether the given writer would write exactly these bytes for the parsed value at its current position,
+     * the escapes in strings are not compared
+     */
+    boolean isFormattedFor(JsonWriter writer) {
+        // the writers of other formats parse JSON values anyway
+        if (writer.getClass() != JsonWriter.class || INDENT == null || STACK_SIZE == null) {
+            return false;
+        }
+        String indent;
+        int stackSize;
+        try {
+            indent = (String) INDENT.get(writer);
+            stackSize = STACK_SIZE.getInt(writer);
+        } catch (IllegalAccessException exception) {
+            return false;
+        }
+        return this.matches(indent == null ? "" : indent, stackSize, writer.getSerializeNulls(), writer.isHtmlSafe());
+    }
+
+    private boolean matches(String indent, int stackSize, boolean serializeNulls, boolean htmlSafe) {
+        byte[] bytes = this.bytes;
+        int end = this.offset + this.length;
+        if (bytes[this.offset] == 'n') {
+            // null members are skipped by writers that don't serialize nulls
+            return serializeNulls;
+        }
+
+        boolean pretty = !indent.isEmpty();
+        long objects = 0;
+        int depth = 0;
+        int i = this.offset;
+        while (i < end) {
+            byte b = bytes[i++];
+            switch (b) {
+                case '{':
+                case '[':
+                    if (i < end && (bytes[i] == '}' || bytes[i] == ']')) {
+                        // empty containers are written without a line break
+                        i++;
+                        break;
+                    }
+                    if (depth == MAX_CHECKED_DEPTH) {
+                        return false;
+                    }
+                    objects = b == '{' ? objects | (1L << depth) : objects & ~(1L << depth);
+                    depth++;
+                    i = this.newline(i, end, indent, stackSize + depth - 1);
+                    break;
+                case ',':
+                    i = this.newline(i, end, indent, stackSize + depth - 1);
+                    break;
+                case '\n':
+                    if (!pretty) {
+                        return false;
+                    }
+                    // the line break before the end of a non-empty container
+                    i = this.newline(i - 1, end, indent, stackSize + depth - 2);
+                    if (i == -1 || i == end || (bytes[i] != '}' && bytes[i] != ']')) {
+                        return false;
+                    }
+                    i++;
+                    depth--;
+                    break;
+                case '}':
+                case ']':
+                    if (pretty) {
+                        return false;
+                    }
+                    depth--;
+                    break;
+                case ':':
+                    if (pretty) {
+                        if (i == end || bytes[i] != ' ') {
+                            return false;
+                        }
+                        i++;
+                    }
+                    if (!serializeNulls && (objects & (1L << (depth - 1))) != 0 && i < end && bytes[i] == 'n') {
+                        return false;
+                    }
+                    break;
+                case '"':
+                    i = this.skipString(i, end, htmlSafe);
+                    break;
+                case ' ':
+                case '\t':
+                case '\r':
+                    return false;
+                default:
+                    break;
+            }
+            if (i == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the position after the line break and the indentation that a pretty printing writer writes, or
+     * {@code -1} if the bytes at the given position differ from it
+     */
+    private int newline(int i, int end, String indent, int count) {
+        if (indent.isEmpty()) {
+            return i;
+        }
+        if (i == end || this.bytes[i++] != '\n') {
+            return -1;
+        }
+        for (int level = 0; level < count; level++) {
+            for (int j = 0; j < indent.length(); j++) {
+                if (i == end || this.bytes[i++] != indent.charAt(j)) {
+                    return -1;
+                }
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return the position after the closing quote, or {@code -1} if the string contains characters that the writer
+     * would escape
+     */
+    private int skipString(int i, int end, boolean htmlSafe) {
+        while (i < end) {
+            byte b = this.bytes[i++];
+            if (b == '"') {
+                return i;
+            } else if (b == '\\') {
+                i++;
+            } else if (htmlSafe && (b == '<' || b == '>' || b == '&' || b == '=' || b == '\'')) {
+                return -1;
+            } else if (b == (byte) 0xE2 && i + 1 < end && this.bytes[i] == (byte) 0x80
+                    && (this.bytes[i + 1] == (byte) 0xA8 || this.bytes[i + 1] == (byte) 0xA9)) {
+                // U+2028 and U+2029 are always escaped
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static Field writerField(String name) {
+        try {
+            Field field = JsonWriter.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException exception) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.bytes, this.offset, this.length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof JsonRawValue) || ((JsonRawValue) other).length != this.length) {
+            return false;
+        }
+
+        JsonRawValue value = (JsonRawValue) other;
+        for (int i = 0; i < this.length; i++) {
+            if (this.bytes[this.offset + i] != value.bytes[value.offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < this.length; i++) {
+            hash = 31 * hash + this.bytes[this.offset + i];
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.github.derrop.documents;
+
+import com.github.derrop.documents.storage.Utf8JsonReader;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+
+/**
+ * A document that only reads the keys of the root object from the given JSON, the values are parsed when they are
+ * accessed for the first time. Values that haven't been accessed or replaced are written back exactly as they
+ * have been read if the storage formats them the same way, e.g. compact JSON with a Gson instance without pretty
+ * printing, otherwise they are parsed and written again, see {@link JsonRawValue}.
+ * <p>
+ * Operations on the whole document like {@link #toJsonObject()}, {@link #toInstanceOf(Class)} or writing it as
+ * YAML parse all remaining values. The structure of the values is validated when the document is created, other
+ * syntax errors like malformed UTF-8 in a value are only reported when it is parsed.
+ * <p>
+ * The given array is not copied and must not be modified while the document is in use. Just like the
+ * {@link DefaultDocument}, this document isn't thread safe, not even for reading.
+ */
+public class LazyDocument extends DefaultDocument {
+
+    private static final ThreadLocal<Utf8JsonReader> READER = ThreadLocal.withInitial(Utf8JsonReader::new);
+
+    private final JsonObject jsonObject;
+
+    public LazyDocument(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public LazyDocument(byte[] bytes, int offset, int length) {
+        this(READER.get().index(bytes, offset, length));
+    }
+
+    private LazyDocument(JsonObject jsonObject) {
+        super(jsonObject);
+        this.jsonObject = jsonObject;
+    }
+
+    @Override
+    public JsonElement get(String key) {
+        JsonElement element = super.get(key);
+
+        if (element instanceof JsonRawValue) {
+            element = parse((JsonRawValue) element);
+            this.jsonObject.add(key, element);
+            this.recordAccess(key, element);
+        }
+
+        return element;
+    }
+
+    @Override
+    public JsonObject toJsonObject() {
+        for (Map.Entry<String, JsonElement> entry : this.jsonObject.entrySet()) {
+            if (entry.getValue() instanceof JsonRawValue) {
+                entry.setValue(parse((JsonRawValue) entry.getValue()));
+            }
+        }
+
+        return this.jsonObject;
+    }
+
+    static JsonElement parse(JsonRawValue value) {
+        return READER.get().read(value.getBytes(), value.getOffset(), value.getLength());
+    }
+
+}
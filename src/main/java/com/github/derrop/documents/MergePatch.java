@@ -0,0 +1,104 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+
+/**
+ * Creates and applies JSON Merge Patches (RFC 7396). A merge patch is a document with the changed values, objects are
+ * merged recursively and {@code null} removes a key. Because of this, merge patches cannot set values to
+ * {@code null}, and arrays are always replaced as a whole. {@link JsonPatch} doesn't have these limitations.
+ * <p>
+ * Merge patches are documents, so they can be written and read in every format of the storages.
+ */
+public final class MergePatch {
+
+    private MergePatch() {
+    }
+
+    /**
+     * @return the merge patch that changes the source document into the target document
+     */
+    public static Document diff(Document source, Document target) {
+        return new DefaultDocument(diff(source.toJsonObject(), target.toJsonObject()));
+    }
+
+    public static JsonObject diff(JsonObject source, JsonObject target) {
+        JsonObject patch = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : source.entrySet()) {
+            if (!target.has(entry.getKey())) {
+                patch.add(entry.getKey(), JsonNull.INSTANCE);
+            }
+        }
+        for (Map.Entry<String, JsonElement> entry : target.entrySet()) {
+            JsonElement value = diffValue(source.get(entry.getKey()), entry.getValue());
+            if (value != null) {
+                patch.add(entry.getKey(), value);
+            }
+        }
+        return patch;
+    }
+
+    /**
+     * @return the value to put into the patch for the given values or {@code null} if they are equal
+     */
+    static JsonElement diffValue(JsonElement source, JsonElement target) {
+        if (source == null) {
+            return target == null ? null : target.deepCopy();
+        } else if (target == null) {
+            return JsonNull.INSTANCE;
+        } else if (source.isJsonObject() && target.isJsonObject()) {
+            JsonObject patch = diff(source.getAsJsonObject(), target.getAsJsonObject());
+            return patch.size() == 0 ? null : patch;
+        } else {
+            return source.equals(target) ? null : target.deepCopy();
+        }
+    }
+
+    /**
+     * Applies the given merge patch to the given document. Only the changed top level values are put into the
+     * document again, so changes are recorded if the document {@link DefaultDocument#trackChanges() tracks} them.
+     *
+     * @return the given document
+     */
+    public static <D extends Document> D apply(D document, Document patch) {
+        for (Map.Entry<String, JsonElement> entry : patch.toJsonObject().entrySet()) {
+            if (entry.getValue().isJsonNull()) {
+                document.remove(entry.getKey());
+            } else {
+                JsonPatch.put(document, entry.getKey(), apply(document.get(entry.getKey()), entry.getValue()));
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Applies the given merge patch to the given value without modifying it.
+     *
+     * @param target the value to patch, {@code null} if there is none
+     * @return the patched value, which shares unchanged parts with the target
+     */
+    public static JsonElement apply(JsonElement target, JsonElement patch) {
+        if (!patch.isJsonObject()) {
+            return patch.deepCopy();
+        }
+
+        JsonObject result = new JsonObject();
+        if (target != null && target.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> entry : target.getAsJsonObject().entrySet()) {
+                result.add(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, JsonElement> entry : patch.getAsJsonObject().entrySet()) {
+            if (entry.getValue().isJsonNull()) {
+                result.remove(entry.getKey());
+            } else {
+                result.add(entry.getKey(), apply(result.get(entry.getKey()), entry.getValue()));
+            }
+        }
+        return result;
+    }
+
+}
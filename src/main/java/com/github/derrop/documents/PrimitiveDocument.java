@@ -0,0 +1,406 @@
+package com.github.derrop.documents;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A document that keeps numbers and booleans in primitive slots instead of {@link JsonPrimitive}s, for documents that
+ * mostly contain numbers.
+ * <p>
+ * Numbers are parsed once when they are added, also the ones of trees read by a storage, into a {@code long} if they
+ * are integers that fit into one or into a {@code double} if they have at most 15 significant digits. Other numbers
+ * are kept as they are. After that, the typed getters like {@link #getInt(String)} and {@link #getDouble(String)}
+ * only read the slot, and updating an existing number with {@link #append(String, long)} or
+ * {@link #append(String, double)} doesn't allocate anything. Decimals are written in the format of
+ * {@link Double#toString(double)}, so {@code 1e2} is written back as {@code 100.0}.
+ * <p>
+ * Nested objects are primitive documents as well and {@link #getDocument(String)} returns them without copying, like
+ * in the {@link DefaultDocument}. {@link #get(String)} and {@link #toJsonObject()} create new trees on every call,
+ * changes to them don't affect this document.
+ */
+public class PrimitiveDocument extends AbstractDocument<PrimitiveDocument> {
+
+    private static final byte LONG = 0;
+    private static final byte DOUBLE = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte DOCUMENT = 3;
+    private static final byte ELEMENT = 4;
+
+    private static final JsonPrimitive TRUE = new JsonPrimitive(true);
+    private static final JsonPrimitive FALSE = new JsonPrimitive(false);
+
+    private final Map<String, Slot> slots = new LinkedHashMap<>();
+
+    public PrimitiveDocument() {
+    }
+
+    public PrimitiveDocument(JsonObject jsonObject) {
+        this.append(jsonObject);
+    }
+
+    public PrimitiveDocument(Document document) {
+        this.append(document);
+    }
+
+    public PrimitiveDocument append(String key, long value) {
+        if (key != null) {
+            this.slot(key).set(LONG, value, null);
+        }
+        return this;
+    }
+
+    public PrimitiveDocument append(String key, double value) {
+        if (key != null) {
+            this.slot(key).set(DOUBLE, Double.doubleToRawLongBits(value), null);
+        }
+        return this;
+    }
+
+    public PrimitiveDocument append(String key, boolean value) {
+        if (key != null) {
+            this.slot(key).set(BOOLEAN, value ? 1 : 0, null);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the given char as a string like {@link #append(String, Character)}, without this method chars would be
+     * widened to numbers by {@link #append(String, long)}.
+     */
+    public PrimitiveDocument append(String key, char value) {
+        return this.append(key, (Character) value);
+    }
+
+    @Override
+    public PrimitiveDocument append(String key, Number value) {
+        if (key != null && value != null) {
+            this.putNumber(this.slot(key), value);
+        }
+        return this;
+    }
+
+    @Override
+    public PrimitiveDocument append(String key, Boolean value) {
+        return value == null ? this : this.append(key, value.booleanValue());
+    }
+
+    @Override
+    protected void put(String key, JsonElement value) {
+        Slot slot = this.slot(key);
+        if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber()) {
+            this.putNumber(slot, value.getAsNumber());
+        } else if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isBoolean()) {
+            slot.set(BOOLEAN, value.getAsBoolean() ? 1 : 0, null);
+        } else if (value.isJsonObject()) {
+            slot.set(DOCUMENT, 0, new PrimitiveDocument(value.getAsJsonObject()));
+        } else {
+            slot.set(ELEMENT, 0, value);
+        }
+    }
+
+    private void putNumber(Slot slot, Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            slot.set(LONG, number.longValue(), null);
+        } else if (number instanceof Double) {
+            slot.set(DOUBLE, Double.doubleToRawLongBits(number.doubleValue()), null);
+        } else if (number instanceof Float) {
+            // through the string so that 0.1f is written as 0.1 like Gson does and not as 0.10000000149011612
+            slot.set(DOUBLE, Double.doubleToRawLongBits(Double.parseDouble(number.toString())), null);
+        } else {
+            // LazilyParsedNumbers from parsed input, BigDecimals and BigIntegers
+            String text = number.toString();
+            int kind = classify(text);
+            if (kind == LONG) {
+                slot.set(LONG, Long.parseLong(text), null);
+                return;
+            }
+
+            double value = kind == DOUBLE ? parseDouble(text) : Double.NaN;
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                slot.set(ELEMENT, 0, new JsonPrimitive(number));
+            } else {
+                slot.set(DOUBLE, Double.doubleToRawLongBits(value), null);
+            }
+        }
+    }
+
+    /**
+     * @return {@link #LONG} for integers with up to 18 digits, {@link #DOUBLE} for decimals with up to 15 significant
+     * digits, which {@link Double#toString(double)} writes back without losing anything, and {@link #ELEMENT} for
+     * everything else
+     */
+    private static int classify(String text) {
+        int length = text.length();
+        int i = 0;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            i++;
+        }
+
+        int digits = 0;
+        int significant = 0;
+        boolean decimal = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (significant > 0 || c != '0') {
+                    significant++;
+                }
+            } else if (c == '.') {
+                decimal = true;
+            } else if (c == 'e' || c == 'E') {
+                // the exponent is checked by Double.parseDouble
+                decimal = true;
+                break;
+            } else {
+                return ELEMENT;
+            }
+        }
+
+        if (digits == 0) {
+            return ELEMENT;
+        } else if (!decimal) {
+            return digits <= 18 ? LONG : ELEMENT;
+        } else {
+            return significant <= 15 ? DOUBLE : ELEMENT;
+        }
+    }
+
+    private static double parseDouble(String text) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException exception) {
+            return Double.NaN;
+        }
+    }
+
+    private Slot slot(String key) {
+        Slot slot = this.slots.get(key);
+        if (slot == null) {
+            slot = new Slot();
+            this.slots.put(key, slot);
+        }
+        return slot;
+    }
+
+    @Override
+    protected PrimitiveDocument newDocument(JsonObject jsonObject) {
+        return new PrimitiveDocument(jsonObject);
+    }
+
+    @Override
+    public Collection<String> keys() {
+        return this.slots.keySet();
+    }
+
+    @Override
+    public int size() {
+        return this.slots.size();
+    }
+
+    @Override
+    public PrimitiveDocument remove(String key) {
+        this.slots.remove(key);
+        return this;
+    }
+
+    @Override
+    public PrimitiveDocument clear() {
+        this.slots.clear();
+        return this;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return key != null && this.slots.containsKey(key);
+    }
+
+    @Override
+    public JsonElement get(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        return slot == null ? null : slot.toJsonElement();
+    }
+
+    @Override
+    public PrimitiveDocument getDocument(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        return slot != null && slot.kind == DOCUMENT ? (PrimitiveDocument) slot.value : null;
+    }
+
+    @Override
+    public int getInt(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        if (slot == null) {
+            return 0;
+        } else if (slot.kind == LONG) {
+            return (int) slot.bits;
+        } else if (slot.kind == DOUBLE) {
+            return (int) Double.longBitsToDouble(slot.bits);
+        } else {
+            return super.getInt(key);
+        }
+    }
+
+    @Override
+    public long getLong(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        if (slot == null) {
+            return 0;
+        } else if (slot.kind == LONG) {
+            return slot.bits;
+        } else if (slot.kind == DOUBLE) {
+            return (long) Double.longBitsToDouble(slot.bits);
+        } else {
+            return super.getLong(key);
+        }
+    }
+
+    @Override
+    public short getShort(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        if (slot != null && (slot.kind == LONG || slot.kind == DOUBLE)) {
+            return (short) this.getInt(key);
+        }
+        return super.getShort(key);
+    }
+
+    @Override
+    public byte getByte(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        if (slot != null && (slot.kind == LONG || slot.kind == DOUBLE)) {
+            return (byte) this.getInt(key);
+        }
+        return super.getByte(key);
+    }
+
+    @Override
+    public double getDouble(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        if (slot == null) {
+            return 0;
+        } else if (slot.kind == LONG) {
+            return slot.bits;
+        } else if (slot.kind == DOUBLE) {
+            return Double.longBitsToDouble(slot.bits);
+        } else {
+            return super.getDouble(key);
+        }
+    }
+
+    @Override
+    public float getFloat(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        if (slot != null && (slot.kind == LONG || slot.kind == DOUBLE)) {
+            return (float) this.getDouble(key);
+        }
+        return super.getFloat(key);
+    }
+
+    @Override
+    public boolean getBoolean(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        if (slot == null) {
+            return false;
+        } else if (slot.kind == BOOLEAN) {
+            return slot.bits != 0;
+        } else if (slot.kind == LONG || slot.kind == DOUBLE) {
+            // like JsonPrimitive#getAsBoolean() which parses the string of the number
+            return false;
+        } else {
+            return super.getBoolean(key);
+        }
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        if (slot != null && slot.kind == LONG) {
+            return BigDecimal.valueOf(slot.bits);
+        }
+        return super.getBigDecimal(key);
+    }
+
+    @Override
+    public BigInteger getBigInteger(String key) {
+        Slot slot = key == null ? null : this.slots.get(key);
+        if (slot != null && slot.kind == LONG) {
+            return BigInteger.valueOf(slot.bits);
+        }
+        return super.getBigInteger(key);
+    }
+
+    @Override
+    public JsonObject toJsonObject() {
+        JsonObject jsonObject = new JsonObject();
+        for (Map.Entry<String, Slot> entry : this.slots.entrySet()) {
+            jsonObject.add(entry.getKey(), entry.getValue().toJsonElement());
+        }
+        return jsonObject;
+    }
+
+    @Override
+    protected void writeJson(JsonWriter jsonWriter) throws IOException {
+        // directly from the slots, without creating a tree first
+        jsonWriter.beginObject();
+        for (Map.Entry<String, Slot> entry : this.slots.entrySet()) {
+            Slot slot = entry.getValue();
+            jsonWriter.name(entry.getKey());
+            if (slot.kind == LONG) {
+                jsonWriter.value(slot.bits);
+            } else if (slot.kind == DOUBLE) {
+                jsonWriter.value(Double.longBitsToDouble(slot.bits));
+            } else if (slot.kind == BOOLEAN) {
+                jsonWriter.value(slot.bits != 0);
+            } else if (slot.kind == DOCUMENT) {
+                ((PrimitiveDocument) slot.value).writeJson(jsonWriter);
+            } else {
+                DefaultDocument.ELEMENT_ADAPTER.write(jsonWriter, (JsonElement) slot.value);
+            }
+        }
+        jsonWriter.endObject();
+    }
+
+    /**
+     * The value of a key, updated in place when the key is set again. Longs are stored in {@code bits}, doubles as
+     * their raw bits and booleans as 0 or 1, nested documents and all other elements in {@code value}.
+     */
+    private static final class Slot {
+
+        private byte kind;
+        private long bits;
+        private Object value;
+
+        private void set(byte kind, long bits, Object value) {
+            this.kind = kind;
+            this.bits = bits;
+            this.value = value;
+        }
+
+        private JsonElement toJsonElement() {
+            switch (this.kind) {
+                case LONG:
+                    return new JsonPrimitive(this.bits);
+                case DOUBLE:
+                    return new JsonPrimitive(Double.longBitsToDouble(this.bits));
+                case BOOLEAN:
+                    return this.bits != 0 ? TRUE : FALSE;
+                case DOCUMENT:
+                    return ((PrimitiveDocument) this.value).toJsonObject();
+                default:
+                    // arrays would be shared with the caller otherwise, primitives and null return themselves
+                    return ((JsonElement) this.value).deepCopy();
+            }
+        }
+
+    }
+
+}
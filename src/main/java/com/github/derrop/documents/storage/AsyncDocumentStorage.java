@@ -0,0 +1,343 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.Document;
+import com.github.derrop.documents.Documents;
+import com.github.derrop.documents.ImmutableDocument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads and writes files in the format of another storage on dedicated I/O threads, so that the calling thread never
+ * waits for the disk. Errors are not printed, the returned futures complete exceptionally with them instead.
+ * <p>
+ * {@link #write(Document, Path)} copies the document, so it can be modified right after the call. Writes are
+ * collected and written in batches: if a file is written again before the previous write has started, only the last
+ * document is written and both futures complete with it. Every batch writes all files to temporary files first,
+ * then forces them to the disk together and finally moves them to their targets atomically, so a file always
+ * contains either the old or the new document. Reading a file with a pending write returns the pending document.
+ * <p>
+ * The wrapped storage is only used to encode and decode the documents, the files are written by this class, so
+ * storages that handle files on their own like the {@link JournalDocumentStorage} cannot be wrapped. Syntax errors are
+ * reported the way the wrapped storage reports them, the futures of reads complete exceptionally if it returns
+ * {@code null}. Documents are encoded with {@link DocumentStorage#toByteArray(Document)}, the futures of writes
+ * complete exceptionally with its errors and the file is left unchanged.
+ */
+public class AsyncDocumentStorage implements AutoCloseable {
+
+    public static final int DEFAULT_THREADS = 2;
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final DocumentStorage storage;
+    private final ExecutorService executor;
+
+    private final Object lock = new Object();
+    private final Map<Path, PendingWrite> queuedWrites = new LinkedHashMap<>();
+    private final Map<Path, PendingWrite> runningWrites = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    public AsyncDocumentStorage(DocumentStorage storage) {
+        this(storage, DEFAULT_THREADS);
+    }
+
+    public AsyncDocumentStorage(DocumentStorage storage, int threads) {
+        this(storage, Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Document I/O #" + THREAD_ID.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param executor the executor for the I/O, it is shut down by {@link #close()}
+     */
+    public AsyncDocumentStorage(DocumentStorage storage, ExecutorService executor) {
+        this.storage = storage;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Document> read(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        synchronized (this.lock) {
+            PendingWrite pending = this.queuedWrites.get(key);
+            if (pending == null) {
+                pending = this.runningWrites.get(key);
+            }
+            if (pending != null) {
+                return CompletableFuture.completedFuture(copyOf(pending.document));
+            }
+        }
+
+        CompletableFuture<Document> future = new CompletableFuture<>();
+        try {
+            this.executor.execute(() -> {
+                try {
+                    Document document = this.storage.read(Files.readAllBytes(key));
+                    if (document == null) {
+                        future.completeExceptionally(new IOException("Cannot read a document from " + key));
+                    } else {
+                        future.complete(document);
+                    }
+                } catch (Exception exception) {
+                    future.completeExceptionally(exception);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            // the storage has been closed
+            future.completeExceptionally(exception);
+        }
+        return future;
+    }
+
+    /**
+     * Queues a copy of the given document to be written to the given file.
+     *
+     * @return a future that completes once the document or a document that has been written to the same file
+     * afterwards is on the disk, it completes exceptionally with a {@link RejectedExecutionException} if the storage
+     * has been closed and with the error of copying or encoding the document if that fails
+     */
+    public CompletableFuture<Void> write(Document document, Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        Document copy;
+        try {
+            copy = copyOf(document);
+        } catch (RuntimeException exception) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(exception);
+            return future;
+        }
+        synchronized (this.lock) {
+            PendingWrite pending = this.queuedWrites.get(key);
+            if (pending != null) {
+                pending.document = copy;
+                return pending.future;
+            }
+
+            pending = new PendingWrite(key, copy);
+            try {
+                // the flush waits for the lock, so it doesn't start before the write is queued
+                this.scheduleFlush();
+            } catch (RejectedExecutionException exception) {
+                pending.future.completeExceptionally(exception);
+                return pending.future;
+            }
+            this.queuedWrites.put(key, pending);
+            return pending.future;
+        }
+    }
+
+    /**
+     * Queues the given documents to be written to their files in the same batch.
+     *
+     * @return a future that completes once all documents are on the disk, or exceptionally with the first error
+     */
+    public CompletableFuture<Void> writeAll(Map<Path, ? extends Document> documents) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(documents.size());
+        synchronized (this.lock) {
+            // keep the flush from starting before all documents are queued
+            for (Map.Entry<Path, ? extends Document> entry : documents.entrySet()) {
+                futures.add(this.write(entry.getValue(), entry.getKey()));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * @return a future that completes once all writes that have been queued before are on the disk, it never completes
+     * exceptionally
+     */
+    public CompletableFuture<Void> flush() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        synchronized (this.lock) {
+            for (PendingWrite pending : this.runningWrites.values()) {
+                futures.add(pending.future);
+            }
+            for (PendingWrite pending : this.queuedWrites.values()) {
+                futures.add(pending.future);
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((result, throwable) -> null);
+    }
+
+    /**
+     * Waits for the pending writes and shuts the executor down, the futures of later reads and writes complete
+     * exceptionally with a {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() {
+        this.flush().join();
+        this.executor.shutdown();
+    }
+
+    private void scheduleFlush() {
+        if (!this.flushScheduled) {
+            this.executor.execute(this::flushQueuedWrites);
+            this.flushScheduled = true;
+        }
+    }
+
+    private void flushQueuedWrites() {
+        List<PendingWrite> batch = new ArrayList<>();
+        synchronized (this.lock) {
+            // only one flush runs at a time, so there are no running writes of the same files
+            for (PendingWrite pending : this.queuedWrites.values()) {
+                if (batch.size() == MAX_BATCH_SIZE) {
+                    break;
+                }
+                batch.add(pending);
+            }
+            for (PendingWrite pending : batch) {
+                this.queuedWrites.remove(pending.path);
+                this.runningWrites.put(pending.path, pending);
+            }
+        }
+
+        List<PendingWrite> rejected = new ArrayList<>();
+        RejectedExecutionException rejection = null;
+        try {
+            this.writeBatch(batch);
+        } finally {
+            synchronized (this.lock) {
+                for (PendingWrite pending : batch) {
+                    this.runningWrites.remove(pending.path);
+                }
+                this.flushScheduled = false;
+                if (!this.queuedWrites.isEmpty()) {
+                    try {
+                        this.scheduleFlush();
+                    } catch (RejectedExecutionException exception) {
+                        // the executor has been shut down while these writes were queued
+                        rejection = exception;
+                        rejected.addAll(this.queuedWrites.values());
+                        this.queuedWrites.clear();
+                    }
+                }
+            }
+            for (PendingWrite pending : rejected) {
+                pending.future.completeExceptionally(rejection);
+            }
+        }
+
+        for (PendingWrite pending : batch) {
+            if (pending.error == null) {
+                pending.future.complete(null);
+            } else {
+                pending.future.completeExceptionally(pending.error);
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) {
+        List<FileChannel> channels = new ArrayList<>(batch.size());
+        try {
+            for (PendingWrite pending : batch) {
+                try {
+                    // write(Document, OutputStream) only prints errors, toByteArray throws them, so a document that
+                    // can't be encoded doesn't replace the file
+                    byte[] bytes = this.storage.toByteArray(pending.document);
+
+                    Path parent = pending.path.getParent();
+                    if (parent != null) {
+                        Files.createDirectories(parent);
+                    }
+                    FileChannel channel = FileChannel.open(pending.temporaryPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    channels.add(channel);
+                    pending.channel = channel;
+
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } catch (Exception exception) {
+                    pending.error = exception;
+                }
+            }
+
+            // the data of all files is written before the first force, so that the disk can write them together
+            for (PendingWrite pending : batch) {
+                if (pending.error == null) {
+                    try {
+                        pending.channel.force(true);
+                    } catch (IOException exception) {
+                        pending.error = exception;
+                    }
+                }
+            }
+        } finally {
+            for (FileChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException exception) {
+                    // the data has already been forced, or the write failed anyway
+                }
+            }
+        }
+
+        Set<Path> directories = new LinkedHashSet<>();
+        for (PendingWrite pending : batch) {
+            if (pending.error == null) {
+                try {
+                    Files.move(pending.temporaryPath(), pending.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    if (pending.path.getParent() != null) {
+                        directories.add(pending.path.getParent());
+                    }
+                } catch (IOException exception) {
+                    pending.error = exception;
+                }
+            }
+        }
+
+        // persist the renames, once per directory
+        for (Path directory : directories) {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException exception) {
+                // directories cannot be opened on every platform, the files themselves are already on the disk
+            }
+        }
+    }
+
+    private static Document copyOf(Document document) {
+        return document instanceof ImmutableDocument ? document : Documents.newDocument(document.toJsonObject().deepCopy());
+    }
+
+    private static final class PendingWrite {
+
+        private final Path path;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private Document document;
+        private FileChannel channel;
+        private Exception error;
+
+        private PendingWrite(Path path, Document document) {
+            this.path = path;
+            this.document = document;
+        }
+
+        private Path temporaryPath() {
+            return this.path.resolveSibling(this.path.getFileName() + TEMPORARY_SUFFIX);
+        }
+
+    }
+
+}
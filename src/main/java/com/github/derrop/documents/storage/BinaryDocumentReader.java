@@ -0,0 +1,281 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.JsonBinary;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.internal.LazilyParsedNumber;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.github.derrop.documents.storage.BinaryFormat.*;
+
+/**
+ * Reads Gson trees from the format described in {@link BinaryFormat}. Arrays are read in place, streams and
+ * {@link ByteBuffer}s through one internal buffer that is reused for every call.
+ * <p>
+ * Instances are not thread safe, the {@link BinaryDocumentStorage} keeps one per thread.
+ */
+public class BinaryDocumentReader {
+
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * The initial size of values read from streams, where the length in the input might be larger than the input.
+     */
+    private static final int MAX_INITIAL_STREAM_VALUE_SIZE = 64 * 1024;
+
+    private static final JsonPrimitive TRUE_VALUE = new JsonPrimitive(true);
+    private static final JsonPrimitive FALSE_VALUE = new JsonPrimitive(false);
+
+    private final byte[] window = new byte[BUFFER_SIZE];
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    private InputStream stream;
+    private ByteBuffer source;
+
+    public JsonObject read(byte[] bytes) throws IOException {
+        this.buffer = bytes;
+        this.position = 0;
+        this.limit = bytes.length;
+        return this.readDocument();
+    }
+
+    public JsonObject read(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            this.buffer = buffer.array();
+            this.position = buffer.arrayOffset() + buffer.position();
+            this.limit = buffer.arrayOffset() + buffer.limit();
+            try {
+                return this.readDocument();
+            } finally {
+                ((Buffer) buffer).position(buffer.limit());
+            }
+        }
+
+        this.source = buffer;
+        this.buffer = this.window;
+        return this.readDocument();
+    }
+
+    public JsonObject read(InputStream stream) throws IOException {
+        this.stream = stream;
+        this.buffer = this.window;
+        return this.readDocument();
+    }
+
+    private JsonObject readDocument() throws IOException {
+        try {
+            int tag = this.readTag();
+            if (tag != OBJECT) {
+                throw new IOException("Malformed binary document, expected an object but found tag " + tag);
+            }
+            JsonObject object = this.readObject();
+            if (this.hasTrailingBytes()) {
+                throw new IOException("Malformed binary document, unexpected bytes after the end of the document");
+            }
+            return object;
+        } finally {
+            this.buffer = null;
+            this.stream = null;
+            this.source = null;
+            this.position = this.limit = 0;
+        }
+    }
+
+    private boolean hasTrailingBytes() throws IOException {
+        if (this.position < this.limit) {
+            return true;
+        }
+        if (this.stream != null) {
+            return this.stream.read() != -1;
+        }
+        return this.source != null && this.source.hasRemaining();
+    }
+
+    JsonElement readElement(int tag) throws IOException {
+        switch (tag) {
+            case NULL:
+                return JsonNull.INSTANCE;
+            case FALSE:
+                return FALSE_VALUE;
+            case TRUE:
+                return TRUE_VALUE;
+            case INT:
+                long value = this.readLong();
+                return new JsonPrimitive(value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (Number) (int) value : (Number) value);
+            case DOUBLE:
+                return new JsonPrimitive(this.readDouble());
+            case NUMBER:
+                return new JsonPrimitive(new LazilyParsedNumber(this.readUtf8(this.readLength(0))));
+            case STRING:
+                return new JsonPrimitive(this.readUtf8(this.readLength(0)));
+            case BINARY:
+                return new JsonBinary(this.readBytes(this.readLength(0)));
+            case ARRAY:
+                return this.readArray();
+            case OBJECT:
+                return this.readObject();
+            default:
+                throw new IOException("Malformed binary document, unknown tag " + tag);
+        }
+    }
+
+    private JsonObject readObject() throws IOException {
+        JsonObject object = new JsonObject();
+        String key;
+        while ((key = this.readKey()) != null) {
+            object.add(key, this.readElement(this.readTag()));
+        }
+        return object;
+    }
+
+    private JsonArray readArray() throws IOException {
+        JsonArray array = new JsonArray();
+        int tag;
+        while ((tag = this.readTag()) != END) {
+            array.add(this.readElement(tag));
+        }
+        return array;
+    }
+
+    int readTag() throws IOException {
+        return this.next();
+    }
+
+    /**
+     * @return the next key of an object or {@code null} if the end of the object has been reached
+     */
+    String readKey() throws IOException {
+        int length = this.readLength(1);
+        return length < 0 ? null : this.readUtf8(length);
+    }
+
+    long readLong() throws IOException {
+        long value = this.readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    double readDouble() throws IOException {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | this.next();
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    String readString() throws IOException {
+        return this.readUtf8(this.readLength(0));
+    }
+
+    byte[] readBytes(int length) throws IOException {
+        if (length > this.available()) {
+            throw new EOFException("Unexpected end of binary document");
+        }
+
+        // the length of streams is unknown, so the array only grows with the bytes that have actually been read
+        byte[] bytes = new byte[this.stream == null ? length : Math.min(length, MAX_INITIAL_STREAM_VALUE_SIZE)];
+        int offset = 0;
+        while (offset < length) {
+            if (this.position == this.limit && !this.fill()) {
+                throw new EOFException("Unexpected end of binary document");
+            }
+            if (offset == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, bytes.length * 2L));
+            }
+            int count = Math.min(bytes.length - offset, this.limit - this.position);
+            System.arraycopy(this.buffer, this.position, bytes, offset, count);
+            this.position += count;
+            offset += count;
+        }
+        return bytes;
+    }
+
+    /**
+     * @param offset the number of special values before the lengths, which are returned as negative numbers
+     */
+    int readLength(int offset) throws IOException {
+        long varint = this.readVarint();
+        // varints above Long.MAX_VALUE are negative
+        if (varint < 0 || varint - offset > Integer.MAX_VALUE) {
+            throw new IOException("Malformed binary document, length " + Long.toUnsignedString(varint) + " is too large");
+        }
+        return (int) (varint - offset);
+    }
+
+    /**
+     * @return the number of bytes that are left in the input, {@link Long#MAX_VALUE} for streams
+     */
+    private long available() {
+        if (this.stream != null) {
+            return Long.MAX_VALUE;
+        }
+        long available = this.limit - this.position;
+        return this.source != null ? available + this.source.remaining() : available;
+    }
+
+    private String readUtf8(int length) throws IOException {
+        if (this.limit - this.position < length) {
+            return new String(this.readBytes(length), StandardCharsets.UTF_8);
+        }
+
+        int start = this.position;
+        this.position += length;
+        for (int i = start; i < this.position; i++) {
+            if (this.buffer[i] < 0) {
+                return new String(this.buffer, start, length, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(this.buffer, start, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = this.next();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed binary document, varint is too long");
+    }
+
+    private int next() throws IOException {
+        if (this.position == this.limit && !this.fill()) {
+            throw new EOFException("Unexpected end of binary document");
+        }
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (this.buffer != this.window) {
+            return false;
+        }
+
+        int read;
+        if (this.stream != null) {
+            read = this.stream.read(this.window, 0, this.window.length);
+        } else if (this.source != null && this.source.hasRemaining()) {
+            read = Math.min(this.window.length, this.source.remaining());
+            this.source.get(this.window, 0, read);
+        } else {
+            read = -1;
+        }
+
+        this.position = 0;
+        this.limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.DefaultDocument;
+import com.github.derrop.documents.Document;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Stores documents in the compact binary format described in {@link BinaryFormat}.
+ * <p>
+ * As there is no textual form of the format, the {@link Reader}/{@link Writer} based methods (and with them
+ * {@link #toString(Document)} and {@link #read(String)}) use the Base64 encoding of the binary data.
+ */
+public class BinaryDocumentStorage implements DocumentStorage {
+
+    private final ThreadLocal<BinaryDocumentReader> binaryReader = ThreadLocal.withInitial(BinaryDocumentReader::new);
+    private final ThreadLocal<BinaryDocumentWriter> binaryWriter = ThreadLocal.withInitial(BinaryDocumentWriter::new);
+
+    @Override
+    public Document read(byte[] bytes) {
+        try {
+            return new DefaultDocument(this.binaryReader.get().read(bytes));
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public Document read(ByteBuffer buffer) {
+        try {
+            return new DefaultDocument(this.binaryReader.get().read(buffer));
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public Document read(InputStream inputStream) {
+        try (InputStream closeable = inputStream) {
+            return new DefaultDocument(this.binaryReader.get().read(closeable));
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public Document read(Reader reader) {
+        try (Reader closeable = reader) {
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[1024];
+            int read;
+            while ((read = closeable.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+            return this.read(Base64.getDecoder().decode(builder.toString().trim()));
+        } catch (IOException | IllegalArgumentException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public void write(Document document, OutputStream outputStream) {
+        try (OutputStream closeable = outputStream) {
+            this.binaryWriter.get().write(document.toJsonObject(), closeable);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the object directly with the type adapters of {@link DefaultDocument#GSON}, without creating a tree.
+     */
+    @Override
+    public void writeObject(Object object, OutputStream outputStream) {
+        if (object instanceof Document) {
+            this.write((Document) object, outputStream);
+            return;
+        }
+
+        BinaryDocumentWriter writer = this.binaryWriter.get();
+        try (OutputStream closeable = outputStream) {
+            writer.begin(closeable);
+            BinaryJsonWriter jsonWriter = new BinaryJsonWriter(writer);
+            DefaultDocument.GSON.toJson(object, object == null ? Object.class : object.getClass(), jsonWriter);
+            jsonWriter.close();
+            writer.flush();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        } finally {
+            writer.end();
+        }
+    }
+
+    @Override
+    public void writeObject(Object object, Writer writer) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        this.writeObject(object, outputStream);
+        try {
+            writer.write(Base64.getEncoder().encodeToString(outputStream.toByteArray()));
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    @Override
+    public void write(Document document, Writer writer) {
+        try {
+            writer.write(Base64.getEncoder().encodeToString(this.toByteArray(document)));
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    @Override
+    public byte[] toByteArray(Document document) {
+        Utf8ByteWriter writer = Utf8ByteWriter.acquire();
+        try {
+            this.binaryWriter.get().write(document.toJsonObject(), writer.outputStream());
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        try {
+            return writer.toByteArray();
+        } finally {
+            writer.release();
+        }
+    }
+
+    @Override
+    public int write(Document document, ByteBuffer buffer) {
+        int position = buffer.position();
+        Utf8ByteWriter writer = Utf8ByteWriter.acquire(buffer);
+        try {
+            this.binaryWriter.get().write(document.toJsonObject(), writer.outputStream());
+            writer.flush();
+        } catch (BufferOverflowException exception) {
+            // cast to Buffer, ByteBuffer#position(int) doesn't exist on Java 8
+            ((Buffer) buffer).position(position);
+            throw exception;
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        } finally {
+            writer.release();
+        }
+        return buffer.position() - position;
+    }
+
+}
@@ -0,0 +1,253 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.JsonBinary;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Map;
+
+import static com.github.derrop.documents.storage.BinaryFormat.*;
+
+/**
+ * Writes Gson trees in the format described in {@link BinaryFormat} through one reusable buffer.
+ * <p>
+ * Instances are not thread safe, the {@link BinaryDocumentStorage} keeps one per thread.
+ */
+public class BinaryDocumentWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private OutputStream out;
+
+    public void write(JsonObject object, OutputStream out) throws IOException {
+        this.begin(out);
+        try {
+            this.writeElement(object);
+            this.flush();
+        } finally {
+            this.end();
+        }
+    }
+
+    void begin(OutputStream out) {
+        this.out = out;
+        this.position = 0;
+    }
+
+    void end() {
+        this.out = null;
+        this.position = 0;
+    }
+
+    void flush() throws IOException {
+        this.out.write(this.buffer, 0, this.position);
+        this.position = 0;
+    }
+
+    void writeElement(JsonElement element) throws IOException {
+        if (element instanceof JsonBinary) {
+            this.writeBinary(((JsonBinary) element).getBytes());
+        } else if (element.isJsonObject()) {
+            this.writeTag(OBJECT);
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                this.writeKey(entry.getKey());
+                this.writeElement(entry.getValue());
+            }
+            this.writeObjectEnd();
+        } else if (element.isJsonArray()) {
+            this.writeTag(ARRAY);
+            for (JsonElement child : element.getAsJsonArray()) {
+                this.writeElement(child);
+            }
+            this.writeTag(END);
+        } else if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                this.writeTag(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                this.writeNumber(primitive.getAsNumber());
+            } else {
+                this.writeString(primitive.getAsString());
+            }
+        } else {
+            this.writeTag(NULL);
+        }
+    }
+
+    void writeTag(int tag) throws IOException {
+        this.ensure(1);
+        this.buffer[this.position++] = (byte) tag;
+    }
+
+    void writeKey(String key) throws IOException {
+        this.writeUtf8(key, 1);
+    }
+
+    void writeObjectEnd() throws IOException {
+        this.writeVarint(0);
+    }
+
+    void writeNumber(Number number) throws IOException {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            this.writeLong(number.longValue());
+        } else if (number instanceof Double) {
+            this.writeDouble(number.doubleValue());
+        } else if (number instanceof Float) {
+            // widening turns 0.1f into 0.10000000149011612, JSON writes the shortest decimal of the float instead
+            this.writeDouble(Double.parseDouble(number.toString()));
+        } else if (number instanceof BigInteger && ((BigInteger) number).bitLength() < 64) {
+            this.writeLong(number.longValue());
+        } else {
+            this.writeDecimal(number.toString());
+        }
+    }
+
+    void writeDecimal(String value) throws IOException {
+        if (isIntegral(value)) {
+            try {
+                long parsed = Long.parseLong(value);
+                // values like 007 or -0 are kept as they are
+                if (Long.toString(parsed).equals(value)) {
+                    this.writeLong(parsed);
+                    return;
+                }
+            } catch (NumberFormatException ignored) {
+                // too large for a long, keep the decimal representation
+            }
+        } else {
+            try {
+                double d = Double.parseDouble(value);
+                if (Double.toString(d).equals(value)) {
+                    this.writeDouble(d);
+                    return;
+                }
+            } catch (NumberFormatException ignored) {
+                // not a plain double, keep the decimal representation
+            }
+        }
+
+        this.writeTag(NUMBER);
+        this.writeUtf8(value, 0);
+    }
+
+    void writeLong(long value) throws IOException {
+        this.writeTag(INT);
+        this.writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeDouble(double value) throws IOException {
+        this.writeTag(DOUBLE);
+        this.ensure(8);
+        long bits = Double.doubleToRawLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            this.buffer[this.position++] = (byte) (bits >>> shift);
+        }
+    }
+
+    void writeString(String value) throws IOException {
+        this.writeTag(STRING);
+        this.writeUtf8(value, 0);
+    }
+
+    void writeBinary(byte[] value) throws IOException {
+        this.writeTag(BINARY);
+        this.writeVarint(value.length);
+        this.writeBytes(value, 0, value.length);
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (length > this.buffer.length - this.position) {
+            this.flush();
+            if (length > this.buffer.length) {
+                this.out.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, this.buffer, this.position, length);
+        this.position += length;
+    }
+
+    private void writeUtf8(String value, int lengthOffset) throws IOException {
+        int length = utf8Length(value);
+        this.writeVarint(length + lengthOffset);
+
+        for (int i = 0; i < value.length(); i++) {
+            this.ensure(4);
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                this.buffer[this.position++] = (byte) c;
+            } else if (c < 0x800) {
+                this.buffer[this.position++] = (byte) (0xC0 | (c >> 6));
+                this.buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                this.buffer[this.position++] = (byte) (0xF0 | (codePoint >> 18));
+                this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                this.buffer[this.position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                this.buffer[this.position++] = (byte) '?';
+            } else {
+                this.buffer[this.position++] = (byte) (0xE0 | (c >> 12));
+                this.buffer[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                this.buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void writeVarint(long value) throws IOException {
+        this.ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[this.position++] = (byte) value;
+    }
+
+    private void ensure(int count) throws IOException {
+        if (this.buffer.length - this.position < count) {
+            this.flush();
+        }
+    }
+
+    private static boolean isIntegral(String value) {
+        int start = value.startsWith("-") ? 1 : 0;
+        if (start == value.length()) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
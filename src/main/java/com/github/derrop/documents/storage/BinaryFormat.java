@@ -0,0 +1,30 @@
+package com.github.derrop.documents.storage;
+
+/**
+ * Type tags of the binary document format used by the {@link BinaryDocumentStorage}.
+ * <p>
+ * Every value starts with one of these tags. Integers are zig-zag encoded varints, doubles are 8 bytes big endian,
+ * strings, decimal numbers and binary values are prefixed with their length as a varint. Arrays are a sequence of
+ * values terminated by {@link #END}; objects are a sequence of entries, each entry being the key length + 1 as a
+ * varint, the UTF-8 key and the value, terminated by a key length of {@code 0}.
+ * A document is a single object value.
+ */
+final class BinaryFormat {
+
+    static final int NULL = 0x00;
+    static final int FALSE = 0x01;
+    static final int TRUE = 0x02;
+    static final int INT = 0x03;
+    static final int DOUBLE = 0x04;
+    static final int NUMBER = 0x05;
+    static final int STRING = 0x06;
+    static final int BINARY = 0x07;
+    static final int ARRAY = 0x08;
+    static final int OBJECT = 0x09;
+    static final int END = 0x0A;
+
+    private BinaryFormat() {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.github.derrop.documents.storage;
+
+import java.io.IOException;
+
+import static com.github.derrop.documents.storage.BinaryFormat.*;
+
+/**
+ * Writes the values written by Gson in the binary format through a {@link BinaryDocumentWriter} that has already
+ * been started with {@link BinaryDocumentWriter#begin(java.io.OutputStream)}.
+ */
+class BinaryJsonWriter extends ForwardingJsonWriter {
+
+    private final BinaryDocumentWriter writer;
+
+    BinaryJsonWriter(BinaryDocumentWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    protected void writeObjectStart() throws IOException {
+        this.writer.writeTag(OBJECT);
+    }
+
+    @Override
+    protected void writeObjectEnd() throws IOException {
+        this.writer.writeObjectEnd();
+    }
+
+    @Override
+    protected void writeArrayStart() throws IOException {
+        this.writer.writeTag(ARRAY);
+    }
+
+    @Override
+    protected void writeArrayEnd() throws IOException {
+        this.writer.writeTag(END);
+    }
+
+    @Override
+    protected void writeName(String name) throws IOException {
+        this.writer.writeKey(name);
+    }
+
+    @Override
+    protected void writeString(String value) throws IOException {
+        this.writer.writeString(value);
+    }
+
+    @Override
+    protected void writeNumber(Number value) throws IOException {
+        this.writer.writeNumber(value);
+    }
+
+    @Override
+    protected void writeLong(long value) throws IOException {
+        this.writer.writeLong(value);
+    }
+
+    @Override
+    protected void writeDouble(double value) throws IOException {
+        this.writer.writeDouble(value);
+    }
+
+    @Override
+    protected void writeBoolean(boolean value) throws IOException {
+        this.writer.writeTag(value ? TRUE : FALSE);
+    }
+
+    @Override
+    protected void writeNull() throws IOException {
+        this.writer.writeTag(NULL);
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.github.derrop.documents.storage;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes UTF-8 from a {@link ByteBuffer} straight into the char arrays of the caller, which avoids the extra byte
+ * copy an {@link java.io.InputStreamReader} would do for memory mapped or other direct buffers.
+ */
+public class ByteBufferReader extends Reader {
+
+    private final ByteBuffer buffer;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private boolean flushed;
+
+    public ByteBufferReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (this.flushed) {
+            return -1;
+        }
+
+        CharBuffer target = CharBuffer.wrap(cbuf, off, len);
+        this.decoder.decode(this.buffer, target, true);
+        if (!this.buffer.hasRemaining()) {
+            this.flushed = this.decoder.flush(target).isUnderflow();
+        }
+
+        int read = target.position() - off;
+        return read == 0 && this.flushed ? -1 : read;
+    }
+
+    @Override
+    public void close() {
+        this.flushed = true;
+    }
+
+}
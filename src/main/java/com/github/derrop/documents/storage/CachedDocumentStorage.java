@@ -0,0 +1,261 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.Document;
+import com.github.derrop.documents.Documents;
+import com.github.derrop.documents.ImmutableDocument;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the documents read from files by another storage in memory, so that reading the same file again only costs
+ * a lookup and a check of the modification time and size of the file instead of parsing it again.
+ * <p>
+ * By default, reading returns {@link ImmutableDocument}s that are shared by all callers, which doesn't preserve the
+ * order of the keys. With copy on read, every read returns a new {@link com.github.derrop.documents.DefaultDocument}
+ * with a copy of the cached tree instead, which can be modified without affecting the cache.
+ * <p>
+ * The least recently used documents are evicted once there are more than the maximum number of documents or their
+ * files are larger than the maximum number of bytes in total. Writing a file with this storage removes it from the
+ * cache. Changes by others are detected by the modification time, the size and the file key of the file, so a change
+ * that keeps the size within the resolution of the modification time of the file system is not detected.
+ * <p>
+ * Inputs and outputs other than files are passed on to the wrapped storage. This class is thread safe.
+ */
+public class CachedDocumentStorage implements DocumentStorage {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+    private final DocumentStorage storage;
+    private final boolean copyOnRead;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75F, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachedDocumentStorage(DocumentStorage storage) {
+        this(storage, false);
+    }
+
+    public CachedDocumentStorage(DocumentStorage storage, boolean copyOnRead) {
+        this(storage, copyOnRead, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public CachedDocumentStorage(DocumentStorage storage, boolean copyOnRead, int maxEntries, long maxBytes) {
+        this.storage = storage;
+        this.copyOnRead = copyOnRead;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public Document read(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        } catch (NoSuchFileException exception) {
+            this.invalidate(key);
+            exception.printStackTrace();
+            return null;
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return null;
+        }
+
+        Entry entry;
+        synchronized (this.entries) {
+            entry = this.entries.get(key);
+        }
+        if (entry != null && entry.matches(attributes)) {
+            this.hits.increment();
+            return this.view(entry);
+        }
+
+        this.misses.increment();
+        Document document = this.storage.read(key);
+        if (document == null) {
+            return null;
+        }
+
+        // the attributes from before the read, a change during the read is detected by the next read
+        entry = new Entry(attributes, this.copyOnRead ? document.toJsonObject().deepCopy() : ImmutableDocument.copyOf(document));
+        this.put(key, entry);
+        return this.copyOnRead ? document : (ImmutableDocument) entry.value;
+    }
+
+    private Document view(Entry entry) {
+        return this.copyOnRead ? Documents.newDocument(((JsonObject) entry.value).deepCopy()) : (ImmutableDocument) entry.value;
+    }
+
+    private void put(Path key, Entry entry) {
+        synchronized (this.entries) {
+            Entry previous = this.entries.put(key, entry);
+            if (previous != null) {
+                this.bytes -= previous.size;
+            }
+            this.bytes += entry.size;
+
+            Iterator<Entry> iterator = this.entries.values().iterator();
+            while ((this.entries.size() > this.maxEntries || this.bytes > this.maxBytes) && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                if (eldest == entry) {
+                    // keep the document that has just been read, even if it is larger than the limit on its own
+                    continue;
+                }
+                iterator.remove();
+                this.bytes -= eldest.size;
+                this.evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Removes the document of the given file from the cache.
+     */
+    public void invalidate(Path path) {
+        synchronized (this.entries) {
+            Entry entry = this.entries.remove(path.toAbsolutePath().normalize());
+            if (entry != null) {
+                this.bytes -= entry.size;
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (this.entries) {
+            this.entries.clear();
+            this.bytes = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * @return the number of reads that have been answered from the cache
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of reads that had to read the file
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    public void resetStatistics() {
+        this.hits.reset();
+        this.misses.reset();
+        this.evictions.reset();
+    }
+
+    @Override
+    public void write(Document document, Path path) {
+        try {
+            this.storage.write(document, path);
+        } finally {
+            this.invalidate(path);
+        }
+    }
+
+    @Override
+    public void writeObject(Object object, Path path) {
+        try {
+            this.storage.writeObject(object, path);
+        } finally {
+            this.invalidate(path);
+        }
+    }
+
+    @Override
+    public <T> T readObject(Path path, Type type) {
+        Document document = this.read(path);
+        return document == null ? null : document.toInstanceOf(type);
+    }
+
+    @Override
+    public Stream<Document> stream(Path path, String key) {
+        return this.storage.stream(path, key);
+    }
+
+    @Override
+    public Document read(Reader reader) {
+        return this.storage.read(reader);
+    }
+
+    @Override
+    public Stream<Document> stream(Reader reader, String key) {
+        return this.storage.stream(reader, key);
+    }
+
+    @Override
+    public void write(Document document, Writer writer) {
+        this.storage.write(document, writer);
+    }
+
+    @Override
+    public int write(Document document, ByteBuffer buffer) {
+        return this.storage.write(document, buffer);
+    }
+
+    @Override
+    public byte[] toByteArray(Document document) {
+        return this.storage.toByteArray(document);
+    }
+
+    private static final class Entry {
+
+        private final FileTime lastModified;
+        private final long size;
+        private final Object fileKey;
+        /**
+         * An {@link ImmutableDocument} or a {@link JsonObject} that is copied on every read.
+         */
+        private final Object value;
+
+        private Entry(BasicFileAttributes attributes, Object value) {
+            this.lastModified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.fileKey = attributes.fileKey();
+            this.value = value;
+        }
+
+        private boolean matches(BasicFileAttributes attributes) {
+            return this.size == attributes.size() && this.lastModified.equals(attributes.lastModifiedTime())
+                    && Objects.equals(this.fileKey, attributes.fileKey());
+        }
+
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.DefaultDocument;
+import com.github.derrop.documents.Document;
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Base for the iterators behind {@link DocumentStorage#stream(java.io.Reader, String)}, only the next document is read
+ * ahead of the consumer.
+ */
+abstract class DocumentIterator implements Iterator<Document> {
+
+    private Document next;
+    private boolean finished;
+
+    /**
+     * @return the next object in the input or {@code null} if the end has been reached
+     */
+    protected abstract JsonObject readNext();
+
+    @Override
+    public boolean hasNext() {
+        if (this.next == null && !this.finished) {
+            JsonObject object = this.readNext();
+            if (object == null) {
+                this.finished = true;
+            } else {
+                this.next = new DefaultDocument(object);
+            }
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public Document next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Document document = this.next;
+        this.next = null;
+        return document;
+    }
+
+    Stream<Document> stream(Closeable input) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        input.close();
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+    }
+
+    /**
+     * The stream of storages that can only read whole documents: the document itself or the documents in the array
+     * with the given key.
+     */
+    static Stream<Document> of(Document document, String key) {
+        if (document == null) {
+            return Stream.empty();
+        }
+        if (key == null) {
+            return Stream.of(document);
+        }
+
+        Collection<Document> documents = document.getDocuments(key);
+        return documents == null ? Stream.empty() : documents.stream();
+    }
+
+}
@@ -1,11 +1,19 @@
 package com.github.derrop.documents.storage;
 
 import com.github.derrop.documents.Document;
+import com.github.derrop.documents.Documents;
 
 import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 public interface DocumentStorage {
 
@@ -35,20 +43,143 @@ public interface DocumentStorage {
         return this.read(new ByteArrayInputStream(bytes));
     }
 
+    default Document read(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return this.read(bytes);
+    }
+
     default Document read(String input) {
         return this.read(new StringReader(input));
     }
 
     Document read(Reader reader);
 
+    /**
+     * Reads the documents in the given input one after another without keeping the previous ones in memory. Which
+     * inputs contain more than one document depends on the storage, e.g. a root array or newline delimited JSON and
+     * multi document streams in YAML. Storages that can only read whole documents return the document of the input.
+     * <p>
+     * The stream has to be closed to close the reader, syntax errors are thrown while the stream is consumed.
+     */
+    default Stream<Document> stream(Reader reader) {
+        return this.stream(reader, null);
+    }
+
+    /**
+     * Like {@link #stream(Reader)}, but for the documents in the array with the given key in the root object(s) of
+     * the input, {@code null} to stream the root documents.
+     */
+    default Stream<Document> stream(Reader reader, String key) {
+        try (Reader closeable = reader) {
+            return DocumentIterator.of(this.read(closeable), key);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return Stream.empty();
+    }
+
+    default Stream<Document> stream(InputStream inputStream) {
+        return this.stream(inputStream, null);
+    }
+
+    default Stream<Document> stream(InputStream inputStream, String key) {
+        try (InputStream closeable = inputStream) {
+            return DocumentIterator.of(this.read(closeable), key);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return Stream.empty();
+    }
+
+    default Stream<Document> stream(Path path) {
+        return this.stream(path, null);
+    }
+
+    default Stream<Document> stream(Path path, String key) {
+        InputStream stream;
+        try {
+            stream = Files.newInputStream(path);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return Stream.empty();
+        }
+        // closed by the returned stream
+        return this.stream(stream, key);
+    }
+
+    /**
+     * Reads the files in the given directory and its subdirectories whose paths relative to the directory match the
+     * given glob in parallel, see {@link ParallelDocumentReader}.
+     *
+     * @return the documents sorted by their paths, files that cannot be read are left out
+     */
+    default Map<Path, Document> readAll(Path directory, String glob) {
+        return ParallelDocumentReader.readAll(directory, glob, path -> this);
+    }
+
+    /**
+     * Reads the files like {@link #readAll(Path, String)}, but returns them in the order they have been read while the
+     * stream is consumed. At most twice as many files as the common {@link java.util.concurrent.ForkJoinPool} has
+     * threads are read ahead of the consumer, so that not all documents have to be kept in memory.
+     */
+    default Stream<Map.Entry<Path, Document>> streamAll(Path directory, String glob) {
+        return ParallelDocumentReader.stream(directory, glob, path -> this, ForkJoinPool.getCommonPoolParallelism() * 2);
+    }
+
     default void write(Document document, OutputStream outputStream) {
-        try (OutputStreamWriter outputStreamWriter = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)) {
-            this.write(document, outputStreamWriter);
+        // encodes into a buffer of this thread instead of creating an OutputStreamWriter with its own buffers
+        try (OutputStream closeable = outputStream) {
+            Utf8ByteWriter writer = Utf8ByteWriter.acquire(closeable);
+            try {
+                this.write(document, writer);
+                writer.flush();
+            } finally {
+                writer.release();
+            }
         } catch (Exception exception) {
             exception.printStackTrace();
         }
     }
 
+    /**
+     * Writes the document into the given buffer, starting at its position.
+     *
+     * @return the number of bytes that have been written
+     * @throws BufferOverflowException if the document doesn't fit into the remaining bytes of the buffer, the
+     *                                 position of the buffer is left unchanged then
+     */
+    default int write(Document document, ByteBuffer buffer) {
+        int position = buffer.position();
+        Utf8ByteWriter writer = Utf8ByteWriter.acquire(buffer);
+        try {
+            this.write(document, writer);
+            writer.flush();
+        } catch (BufferOverflowException exception) {
+            // cast to Buffer, ByteBuffer#position(int) doesn't exist on Java 8
+            ((Buffer) buffer).position(position);
+            throw exception;
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        } finally {
+            writer.release();
+        }
+        return buffer.position() - position;
+    }
+
+    /**
+     * @return the bytes that {@link #write(Document, OutputStream)} writes, encoded through a buffer of this thread
+     */
+    default byte[] toByteArray(Document document) {
+        Utf8ByteWriter writer = Utf8ByteWriter.acquire();
+        try {
+            this.write(document, writer);
+            return writer.toByteArray();
+        } finally {
+            writer.release();
+        }
+    }
+
     default void write(Document document, File file) {
         this.write(document, file.toPath());
     }
@@ -68,15 +199,77 @@ public interface DocumentStorage {
     }
 
     default String toString(Document document) {
-        try (StringWriter writer = new StringWriter()) {
+        PooledStringWriter writer = PooledStringWriter.acquire();
+        try {
             this.write(document, writer);
             return writer.toString();
+        } finally {
+            writer.release();
+        }
+    }
+
+    void write(Document document, Writer writer);
+
+    /**
+     * Writes the given object like {@code write(Documents.newDocument(object), writer)}, but storages that support it
+     * write the fields directly with the type adapters of their Gson instance instead of creating a document first.
+     * The object has to be written as an object, {@link Document}s are written with {@link #write(Document, Writer)}.
+     */
+    default void writeObject(Object object, Writer writer) {
+        this.write(object instanceof Document ? (Document) object : Documents.newDocument(object), writer);
+    }
+
+    default void writeObject(Object object, OutputStream outputStream) {
+        try (OutputStream closeable = outputStream) {
+            Utf8ByteWriter writer = Utf8ByteWriter.acquire(closeable);
+            try {
+                this.writeObject(object, writer);
+                writer.flush();
+            } finally {
+                writer.release();
+            }
+        } catch (Exception exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    default void writeObject(Object object, Path path) {
+        Path parent = path.getParent();
+        try {
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (OutputStream stream = Files.newOutputStream(path)) {
+                this.writeObject(object, stream);
+            }
         } catch (IOException exception) {
             exception.printStackTrace();
         }
-        return null;
     }
 
-    void write(Document document, Writer writer);
+    /**
+     * Reads an object of the given type like {@code read(reader).toInstanceOf(type)}, but storages that support it
+     * read the object directly with the type adapters of their Gson instance instead of creating a document first.
+     *
+     * @return the object or {@code null} if the input couldn't be read
+     */
+    default <T> T readObject(Reader reader, Type type) {
+        Document document = this.read(reader);
+        return document == null ? null : document.toInstanceOf(type);
+    }
+
+    default <T> T readObject(InputStream inputStream, Type type) {
+        Document document = this.read(inputStream);
+        return document == null ? null : document.toInstanceOf(type);
+    }
+
+    default <T> T readObject(Path path, Type type) {
+        try (InputStream stream = Files.newInputStream(path)) {
+            return this.readObject(stream, type);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return null;
+        }
+    }
 
 }
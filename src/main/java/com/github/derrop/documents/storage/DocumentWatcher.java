@@ -0,0 +1,344 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.Document;
+import com.github.derrop.documents.Documents;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches files with a {@link WatchService} and reads them again with a storage when they have been changed, so that
+ * changes of e.g. configurations are picked up without reading the files periodically.
+ * <p>
+ * Events are debounced: a file is only read once no further event for it has arrived for the debounce time, so
+ * editors that write a file in several steps cause only a single read. Files whose modification time and size
+ * haven't changed are not read at all. The new document is compared with the previous one and the listeners of the
+ * file are only called if something has changed, with the paths of the changed values in the syntax of
+ * {@link com.github.derrop.documents.DocumentPath}, e.g. {@code database.hosts[1]}. Paths of removed values are
+ * included as well.
+ * <p>
+ * Listeners are called on the thread of the watcher, one after another. Files that cannot be read, e.g. because they
+ * have been written only partially, are read again on the next change.
+ */
+public class DocumentWatcher implements AutoCloseable {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 100;
+
+    private final DocumentStorage storage;
+    private final long debounceNanos;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private final Map<Path, WatchedFile> files = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> directories = new HashMap<>();
+    /**
+     * The files with events that are waiting for the debounce time, only accessed by the thread of the watcher.
+     */
+    private final Map<WatchedFile, Long> pendingFiles = new HashMap<>();
+
+    public DocumentWatcher(DocumentStorage storage) throws IOException {
+        this(storage, DEFAULT_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public DocumentWatcher(DocumentStorage storage, long debounce, TimeUnit unit) throws IOException {
+        this.storage = storage;
+        this.debounceNanos = unit.toNanos(debounce);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "Document watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Starts to watch the given file, if it is already watched, the listener is added to the existing ones.
+     *
+     * @return the current document of the file or {@code null} if it cannot be read
+     */
+    public Document watch(Path path, Listener listener) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        Path directory = key.getParent();
+        if (directory == null) {
+            throw new IllegalArgumentException(key + " is not in a directory");
+        }
+
+        WatchedFile file;
+        // the files are updated under the same lock, so unwatch doesn't cancel the directory of a file added meanwhile
+        synchronized (this.directories) {
+            if (!this.directories.containsKey(directory)) {
+                this.directories.put(directory, directory.register(this.watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+            }
+            file = this.files.computeIfAbsent(key, WatchedFile::new);
+            file.listeners.add(listener);
+        }
+
+        synchronized (file) {
+            if (file.previous == null) {
+                file.reload();
+            }
+            return file.previous == null ? null : Documents.newDocument(file.previous.deepCopy());
+        }
+    }
+
+    /**
+     * Stops to watch the given file.
+     */
+    public void unwatch(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        Path directory = key.getParent();
+        synchronized (this.directories) {
+            if (this.files.remove(key) == null || directory == null) {
+                return;
+            }
+
+            boolean used = false;
+            for (Path file : this.files.keySet()) {
+                used |= directory.equals(file.getParent());
+            }
+            if (!used) {
+                WatchKey watchKey = this.directories.remove(directory);
+                if (watchKey != null) {
+                    watchKey.cancel();
+                }
+            }
+        }
+    }
+
+    public void removeListener(Path path, Listener listener) {
+        WatchedFile file = this.files.get(path.toAbsolutePath().normalize());
+        if (file != null) {
+            file.listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Stops the watcher, the listeners are not called anymore.
+     */
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+        this.thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey watchKey;
+                if (this.pendingFiles.isEmpty()) {
+                    watchKey = this.watchService.take();
+                } else {
+                    long wait = this.nextDeadline() - System.nanoTime();
+                    watchKey = wait > 0 ? this.watchService.poll(wait, TimeUnit.NANOSECONDS) : this.watchService.poll();
+                }
+
+                if (watchKey != null) {
+                    this.handleEvents(watchKey);
+                }
+                this.reloadDueFiles();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException exception) {
+            // closed
+        }
+    }
+
+    private void handleEvents(WatchKey watchKey) {
+        Path directory = (Path) watchKey.watchable();
+        long deadline = System.nanoTime() + this.debounceNanos;
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events have been lost, check all files of the directory
+                for (WatchedFile file : this.files.values()) {
+                    if (file.path.getParent().equals(directory)) {
+                        this.pendingFiles.put(file, deadline);
+                    }
+                }
+                continue;
+            }
+
+            WatchedFile file = this.files.get(directory.resolve((Path) event.context()));
+            if (file != null) {
+                this.pendingFiles.put(file, deadline);
+            }
+        }
+        watchKey.reset();
+    }
+
+    private long nextDeadline() {
+        long deadline = Long.MAX_VALUE;
+        for (long fileDeadline : this.pendingFiles.values()) {
+            deadline = Math.min(deadline, fileDeadline);
+        }
+        return deadline;
+    }
+
+    private void reloadDueFiles() {
+        long now = System.nanoTime();
+        List<WatchedFile> due = new ArrayList<>();
+        for (Iterator<Map.Entry<WatchedFile, Long>> iterator = this.pendingFiles.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<WatchedFile, Long> entry = iterator.next();
+            if (entry.getValue() - now <= 0) {
+                due.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+
+        for (WatchedFile file : due) {
+            if (this.files.get(file.path) != file) {
+                continue; // unwatched in the meantime
+            }
+
+            JsonObject current;
+            Collection<String> changedPaths;
+            synchronized (file) {
+                JsonObject previous = file.previous;
+                if (!file.reload()) {
+                    continue;
+                }
+                changedPaths = new LinkedHashSet<>();
+                diff("", previous == null ? new JsonObject() : previous, file.previous, (Set<String>) changedPaths);
+                if (changedPaths.isEmpty()) {
+                    continue;
+                }
+                // the tree is replaced and never modified on the next reload, so it can be copied outside of the lock
+                current = file.previous;
+                changedPaths = Collections.unmodifiableCollection(changedPaths);
+            }
+
+            for (Listener listener : file.listeners) {
+                try {
+                    // every listener gets its own copy, so changes of one listener aren't seen by the others
+                    listener.onChange(file.path, Documents.newDocument(current.deepCopy()), changedPaths);
+                } catch (Exception exception) {
+                    exception.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the paths of the values that differ between the given values to the given set.
+     */
+    private static void diff(String path, JsonElement previous, JsonElement current, Set<String> changedPaths) {
+        if (previous.equals(current)) {
+            return;
+        }
+
+        if (previous.isJsonObject() && current.isJsonObject()) {
+            JsonObject previousObject = previous.getAsJsonObject();
+            JsonObject currentObject = current.getAsJsonObject();
+            for (Map.Entry<String, JsonElement> entry : previousObject.entrySet()) {
+                if (!currentObject.has(entry.getKey())) {
+                    changedPaths.add(child(path, entry.getKey()));
+                }
+            }
+            for (Map.Entry<String, JsonElement> entry : currentObject.entrySet()) {
+                JsonElement previousValue = previousObject.get(entry.getKey());
+                if (previousValue == null) {
+                    changedPaths.add(child(path, entry.getKey()));
+                } else {
+                    diff(child(path, entry.getKey()), previousValue, entry.getValue(), changedPaths);
+                }
+            }
+        } else if (previous.isJsonArray() && current.isJsonArray()) {
+            JsonArray previousArray = previous.getAsJsonArray();
+            JsonArray currentArray = current.getAsJsonArray();
+            for (int i = 0; i < Math.max(previousArray.size(), currentArray.size()); i++) {
+                if (i >= previousArray.size() || i >= currentArray.size()) {
+                    changedPaths.add(path + '[' + i + ']');
+                } else {
+                    diff(path + '[' + i + ']', previousArray.get(i), currentArray.get(i), changedPaths);
+                }
+            }
+        } else {
+            changedPaths.add(path);
+        }
+    }
+
+    private static String child(String path, String key) {
+        boolean plain = !key.isEmpty() && !key.equals("*") && key.charAt(0) != '$';
+        for (int i = 0; i < key.length() && plain; i++) {
+            plain = ".[]'\"\\ ".indexOf(key.charAt(i)) == -1;
+        }
+        if (plain) {
+            return path.isEmpty() ? key : path + '.' + key;
+        }
+        return path + "['" + key.replace("\\", "\\\\").replace("'", "\\'") + "']";
+    }
+
+    /**
+     * Called when a watched file has been changed.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * @param document     the new document of the file, a copy for every call and every listener
+         * @param changedPaths the paths of the values that have been added, changed or removed, the collection is
+         *                     shared by all listeners and cannot be modified
+         */
+        void onChange(Path path, Document document, Collection<String> changedPaths);
+
+    }
+
+    private final class WatchedFile {
+
+        private final Path path;
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+        private JsonObject previous;
+        private BasicFileAttributes attributes;
+
+        private WatchedFile(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @return whether the file has been changed and read successfully
+         */
+        private boolean reload() {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(this.path, BasicFileAttributes.class);
+            } catch (IOException exception) {
+                return false; // deleted, probably replaced soon
+            }
+            if (this.attributes != null && this.attributes.size() == attributes.size()
+                    && this.attributes.lastModifiedTime().equals(attributes.lastModifiedTime())) {
+                return false;
+            }
+
+            Document document = DocumentWatcher.this.storage.read(this.path);
+            if (document == null) {
+                return false;
+            }
+            this.attributes = attributes;
+            this.previous = document.toJsonObject();
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,217 @@
+package com.github.derrop.documents.storage;
+
+import com.google.gson.JsonParser;
+import com.google.gson.internal.bind.TypeAdapters;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A {@link JsonWriter} that passes the values written by Gson on to another format instead of writing JSON, like
+ * the tree writer of Gson does it for trees. This way objects can be written by their type adapters without creating
+ * a tree first.
+ * <p>
+ * The written value has to be a single object, just like documents.
+ */
+abstract class ForwardingJsonWriter extends JsonWriter {
+
+    private static final Writer UNWRITABLE_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private String pendingName;
+    private int depth;
+    private boolean started;
+
+    ForwardingJsonWriter() {
+        super(UNWRITABLE_WRITER);
+    }
+
+    protected abstract void writeObjectStart() throws IOException;
+
+    protected abstract void writeObjectEnd() throws IOException;
+
+    protected abstract void writeArrayStart() throws IOException;
+
+    protected abstract void writeArrayEnd() throws IOException;
+
+    protected abstract void writeName(String name) throws IOException;
+
+    protected abstract void writeString(String value) throws IOException;
+
+    protected abstract void writeNumber(Number value) throws IOException;
+
+    protected abstract void writeLong(long value) throws IOException;
+
+    protected abstract void writeDouble(double value) throws IOException;
+
+    protected abstract void writeBoolean(boolean value) throws IOException;
+
+    protected abstract void writeNull() throws IOException;
+
+    /**
+     * @return whether the root object has been written completely
+     */
+    boolean isComplete() {
+        return this.started && this.depth == 0;
+    }
+
+    private void beforeValue(boolean object) throws IOException {
+        if (this.depth == 0 && (this.started || !object)) {
+            throw new IllegalStateException("Documents can only be written from a single object");
+        }
+        if (this.pendingName != null) {
+            this.writeName(this.pendingName);
+            this.pendingName = null;
+        }
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        this.beforeValue(true);
+        this.writeObjectStart();
+        this.started = true;
+        this.depth++;
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        if (this.depth == 0 || this.pendingName != null) {
+            throw new IllegalStateException();
+        }
+        this.depth--;
+        this.writeObjectEnd();
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        this.beforeValue(false);
+        this.writeArrayStart();
+        this.depth++;
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        if (this.depth == 0 || this.pendingName != null) {
+            throw new IllegalStateException();
+        }
+        this.depth--;
+        this.writeArrayEnd();
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        if (this.depth == 0 || this.pendingName != null) {
+            throw new IllegalStateException();
+        }
+        this.pendingName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return this.nullValue();
+        }
+        this.beforeValue(false);
+        this.writeString(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        if (value == null) {
+            return this.nullValue();
+        }
+        // e.g. unparsed values of the LazyDocument
+        TypeAdapters.JSON_ELEMENT.write(this, JsonParser.parseString(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (this.pendingName != null && !this.getSerializeNulls()) {
+            // skip the name and the value, like the JSON writer does it
+            this.pendingName = null;
+            return this;
+        }
+        this.beforeValue(false);
+        this.writeNull();
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        this.beforeValue(false);
+        this.writeBoolean(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        return value == null ? this.nullValue() : this.value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        if (!this.isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        this.beforeValue(false);
+        this.writeDouble(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        this.beforeValue(false);
+        this.writeLong(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return this.nullValue();
+        }
+        if (!this.isLenient() && (Double.isNaN(value.doubleValue()) || Double.isInfinite(value.doubleValue()))) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        this.beforeValue(false);
+        this.writeNumber(value);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!this.isComplete()) {
+            throw new IOException("Incomplete document");
+        }
+    }
+
+}
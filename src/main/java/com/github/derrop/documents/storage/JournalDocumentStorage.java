@@ -0,0 +1,451 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.Document;
+import com.github.derrop.documents.Documents;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Writes documents to files as a snapshot in the format of another storage and a journal next to it
+ * ({@code <file>.journal}), so that saving a document in which only a few keys have changed only appends these keys
+ * to the journal instead of rewriting the whole file.
+ * <p>
+ * Every {@link #write(Document, Path)} compares the top level values of the document with the ones that have been
+ * written last and appends a single record with the changed and removed keys, protected by a checksum and forced to
+ * the disk. {@link #read(Path)} reads the snapshot and replays the journal on top of it. A record that has only been
+ * written partially, e.g. because the process crashed, is ignored and overwritten by the next write, so the file
+ * always contains the state of the last complete write.
+ * <p>
+ * Once the journal is larger than the compaction threshold and the snapshot, the current state is written into a new
+ * snapshot in the background, which replaces the old one atomically, and the journal is truncated.
+ * <p>
+ * The storage keeps a copy of the last state of every file it has read or written, so the same instance should be
+ * used for all accesses to a file, and files shouldn't be changed by anything else while they are in use. Other
+ * inputs and outputs like readers and writers are passed on to the wrapped storage and don't use a journal.
+ */
+public class JournalDocumentStorage implements DocumentStorage {
+
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 1024 * 1024;
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final DocumentStorage RECORD_STORAGE = Documents.compactJsonStorage();
+    private static final ExecutorService COMPACTION_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Document journal compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DocumentStorage storage;
+    private final long compactionThreshold;
+    private final Map<Path, Journal> journals = new ConcurrentHashMap<>();
+
+    public JournalDocumentStorage() {
+        this(Documents.jsonStorage());
+    }
+
+    public JournalDocumentStorage(DocumentStorage storage) {
+        this(storage, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public JournalDocumentStorage(DocumentStorage storage, long compactionThreshold) {
+        this.storage = storage;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    @Override
+    public Document read(Path path) {
+        Journal journal = this.journal(path);
+        synchronized (journal) {
+            try {
+                return journal.load();
+            } catch (IOException exception) {
+                exception.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void write(Document document, Path path) {
+        Journal journal = this.journal(path);
+        boolean compact;
+        synchronized (journal) {
+            try {
+                journal.ensureLoaded();
+                journal.append(document.toJsonObject());
+            } catch (IOException exception) {
+                exception.printStackTrace();
+                return;
+            }
+
+            compact = !journal.compacting && journal.journalLength > this.compactionThreshold
+                    && journal.journalLength > journal.snapshotSize;
+            if (compact) {
+                journal.compacting = true;
+            }
+        }
+
+        if (compact) {
+            COMPACTION_EXECUTOR.execute(() -> this.compact(journal));
+        }
+    }
+
+    /**
+     * Writes the current state of the given file into a new snapshot and truncates the journal.
+     */
+    public void compact(Path path) {
+        this.compact(this.journal(path));
+    }
+
+    private void compact(Journal journal) {
+        synchronized (journal.compactionLock) {
+            this.compactNow(journal);
+        }
+    }
+
+    private void compactNow(Journal journal) {
+        try {
+            Map<String, JsonElement> entries;
+            long journalLength;
+            synchronized (journal) {
+                journal.ensureLoaded();
+                // the values are never modified, only replaced
+                entries = new LinkedHashMap<>(journal.entries);
+                journalLength = journal.journalLength;
+            }
+
+            JsonObject snapshot = new JsonObject();
+            for (Map.Entry<String, JsonElement> entry : entries.entrySet()) {
+                snapshot.add(entry.getKey(), entry.getValue());
+            }
+            Path temporary = journal.path.resolveSibling(journal.path.getFileName() + TEMPORARY_SUFFIX);
+            try (FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+                // the storages only print errors of output streams, but a broken snapshot must never replace the old one
+                FailureTrackingOutputStream trackingStream = new FailureTrackingOutputStream(stream);
+                this.storage.write(Documents.newDocument(snapshot), trackingStream);
+                if (trackingStream.failed) {
+                    throw new IOException("Failed to write the snapshot " + temporary);
+                }
+                stream.getFD().sync();
+            }
+
+            synchronized (journal) {
+                // replaying the records before journalLength again on the new snapshot doesn't change anything,
+                // so a crash between these two moves doesn't lose or duplicate changes
+                Files.move(temporary, journal.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                journal.snapshotSize = Files.size(journal.path);
+                journal.truncate(journalLength);
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        } finally {
+            synchronized (journal) {
+                journal.compacting = false;
+            }
+        }
+    }
+
+    private Journal journal(Path path) {
+        return this.journals.computeIfAbsent(path.toAbsolutePath().normalize(), Journal::new);
+    }
+
+    @Override
+    public void writeObject(Object object, Path path) {
+        this.write(object instanceof Document ? (Document) object : Documents.newDocument(object), path);
+    }
+
+    @Override
+    public <T> T readObject(Path path, Type type) {
+        Document document = this.read(path);
+        return document == null ? null : document.toInstanceOf(type);
+    }
+
+    @Override
+    public Stream<Document> stream(Path path, String key) {
+        Document document = this.read(path);
+        if (document == null) {
+            return Stream.empty();
+        }
+        if (key == null) {
+            return Stream.of(document);
+        }
+        Collection<Document> documents = document.getDocuments(key);
+        return documents == null ? Stream.empty() : documents.stream();
+    }
+
+    @Override
+    public Document read(Reader reader) {
+        return this.storage.read(reader);
+    }
+
+    @Override
+    public Stream<Document> stream(Reader reader, String key) {
+        return this.storage.stream(reader, key);
+    }
+
+    @Override
+    public void write(Document document, Writer writer) {
+        this.storage.write(document, writer);
+    }
+
+    private final class Journal {
+
+        private final Path path;
+        private final Path journalPath;
+        private final Object compactionLock = new Object();
+
+        /**
+         * The values that have been read or written last, {@code null} if the files haven't been loaded yet.
+         */
+        private Map<String, JsonElement> entries;
+        private long journalLength;
+        private long snapshotSize;
+        private boolean compacting;
+
+        private Journal(Path path) {
+            this.path = path;
+            this.journalPath = path.resolveSibling(path.getFileName() + JOURNAL_SUFFIX);
+        }
+
+        private void ensureLoaded() throws IOException {
+            if (this.entries != null) {
+                return;
+            }
+            if (!Files.exists(this.path) && !Files.exists(this.journalPath)) {
+                this.entries = new LinkedHashMap<>();
+                this.journalLength = 0;
+                this.snapshotSize = 0;
+            } else if (this.load() == null) {
+                throw new IOException("Cannot read the snapshot " + this.path);
+            }
+        }
+
+        private Document load() throws IOException {
+            JsonObject root = new JsonObject();
+            boolean snapshotExists = Files.exists(this.path);
+            boolean journalExists = Files.exists(this.journalPath);
+            if (snapshotExists) {
+                Document snapshot = JournalDocumentStorage.this.storage.read(this.path);
+                if (snapshot == null) {
+                    return null;
+                }
+                root = snapshot.toJsonObject();
+            }
+
+            if (journalExists) {
+                this.journalLength = this.replay(root);
+            } else if (snapshotExists) {
+                this.journalLength = 0;
+            } else {
+                throw new NoSuchFileException(this.path.toString());
+            }
+
+            this.snapshotSize = snapshotExists ? Files.size(this.path) : 0;
+            this.entries = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : root.entrySet()) {
+                this.entries.put(entry.getKey(), entry.getValue().deepCopy());
+            }
+            return Documents.newDocument(root);
+        }
+
+        /**
+         * Applies the complete records in the journal to the given object.
+         *
+         * @return the length of the complete records
+         */
+        private long replay(JsonObject root) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(this.journalPath));
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    ((Buffer) buffer).position(start);
+                    break;
+                }
+
+                crc.reset();
+                crc.update(buffer.array(), buffer.position(), length);
+                if ((int) crc.getValue() != checksum) {
+                    ((Buffer) buffer).position(start);
+                    break;
+                }
+
+                Document record = RECORD_STORAGE.read(new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8));
+                ((Buffer) buffer).position(buffer.position() + length);
+                if (record == null) {
+                    ((Buffer) buffer).position(start);
+                    break;
+                }
+
+                JsonObject set = record.getJsonObject("set");
+                if (set != null) {
+                    for (Map.Entry<String, JsonElement> entry : set.entrySet()) {
+                        root.add(entry.getKey(), entry.getValue());
+                    }
+                }
+                JsonArray remove = record.getJsonArray("remove");
+                if (remove != null) {
+                    for (JsonElement key : remove) {
+                        root.remove(key.getAsString());
+                    }
+                }
+            }
+            return buffer.position();
+        }
+
+        private void append(JsonObject current) throws IOException {
+            JsonObject set = new JsonObject();
+            JsonArray remove = new JsonArray();
+            for (Map.Entry<String, JsonElement> entry : current.entrySet()) {
+                JsonElement previous = this.entries.get(entry.getKey());
+                if (previous == null || !previous.equals(entry.getValue())) {
+                    set.add(entry.getKey(), entry.getValue());
+                }
+            }
+            for (String key : this.entries.keySet()) {
+                if (!current.has(key)) {
+                    remove.add(key);
+                }
+            }
+            if (set.size() == 0 && remove.size() == 0) {
+                return;
+            }
+
+            JsonObject record = new JsonObject();
+            if (set.size() != 0) {
+                record.add("set", set);
+            }
+            if (remove.size() != 0) {
+                record.add("remove", remove);
+            }
+            byte[] payload = RECORD_STORAGE.toString(Documents.newDocument(record)).getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            ((Buffer) buffer).flip();
+
+            Path parent = this.journalPath.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (FileChannel channel = FileChannel.open(this.journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // drop an incomplete record of a failed write
+                if (channel.size() > this.journalLength) {
+                    channel.truncate(this.journalLength);
+                }
+                channel.position(this.journalLength);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+
+            this.journalLength += RECORD_HEADER_SIZE + payload.length;
+            for (Map.Entry<String, JsonElement> entry : set.entrySet()) {
+                this.entries.put(entry.getKey(), entry.getValue().deepCopy());
+            }
+            for (JsonElement key : remove) {
+                this.entries.remove(key.getAsString());
+            }
+        }
+
+        /**
+         * Removes the records before the given position from the journal.
+         */
+        private void truncate(long position) throws IOException {
+            Path temporary = this.journalPath.resolveSibling(this.journalPath.getFileName() + TEMPORARY_SUFFIX);
+            try (FileChannel source = FileChannel.open(this.journalPath, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long remaining = this.journalLength - position;
+                long transferred = 0;
+                while (transferred < remaining) {
+                    transferred += source.transferTo(position + transferred, remaining - transferred, target);
+                }
+                target.force(true);
+            }
+            Files.move(temporary, this.journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.journalLength -= position;
+        }
+
+    }
+
+    private static final class FailureTrackingOutputStream extends FilterOutputStream {
+
+        private boolean failed;
+
+        private FailureTrackingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                this.out.write(b);
+            } catch (IOException exception) {
+                this.failed = true;
+                throw exception;
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            try {
+                this.out.write(bytes, offset, length);
+            } catch (IOException exception) {
+                this.failed = true;
+                throw exception;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                this.out.flush();
+            } catch (IOException exception) {
+                this.failed = true;
+                throw exception;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the file is still synced and closed by the caller
+            this.flush();
+        }
+
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.github.derrop.documents.storage;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.bind.TypeAdapters;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pulls the objects out of JSON input with the Gson {@link JsonReader}: any number of root values (concatenated or
+ * newline delimited), the elements of root arrays or the elements of the array with a given key in the root objects.
+ * Values that aren't objects are skipped, just like {@link com.github.derrop.documents.Document#getDocuments(String)}
+ * does.
+ */
+class JsonDocumentIterator extends DocumentIterator {
+
+    private final JsonReader reader;
+    private final String key;
+
+    private boolean inArray;
+
+    JsonDocumentIterator(Reader reader, String key) {
+        this.reader = new JsonReader(reader);
+        // lenient to allow more than one root value
+        this.reader.setLenient(true);
+        this.key = key;
+    }
+
+    @Override
+    protected JsonObject readNext() {
+        try {
+            while (true) {
+                if (this.inArray) {
+                    if (!this.reader.hasNext()) {
+                        this.reader.endArray();
+                        this.inArray = false;
+                        if (this.key != null) {
+                            this.skipRemainingObject();
+                        }
+                    } else if (this.reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        return TypeAdapters.JSON_ELEMENT.read(this.reader).getAsJsonObject();
+                    } else {
+                        this.reader.skipValue();
+                    }
+                    continue;
+                }
+
+                JsonToken token = this.peekRoot();
+                if (token == JsonToken.END_DOCUMENT) {
+                    return null;
+                }
+
+                if (this.key == null && token == JsonToken.BEGIN_ARRAY) {
+                    this.reader.beginArray();
+                    this.inArray = true;
+                } else if (this.key == null && token == JsonToken.BEGIN_OBJECT) {
+                    return TypeAdapters.JSON_ELEMENT.read(this.reader).getAsJsonObject();
+                } else if (this.key != null && token == JsonToken.BEGIN_OBJECT) {
+                    this.findKeyedArray();
+                } else {
+                    this.reader.skipValue();
+                }
+            }
+        } catch (MalformedJsonException | EOFException exception) {
+            throw new JsonSyntaxException(exception);
+        } catch (IOException exception) {
+            throw new JsonIOException(exception);
+        }
+    }
+
+    private JsonToken peekRoot() throws IOException {
+        try {
+            return this.reader.peek();
+        } catch (EOFException exception) {
+            // only thrown for empty input, the end after the first root value is END_DOCUMENT
+            return JsonToken.END_DOCUMENT;
+        }
+    }
+
+    private void findKeyedArray() throws IOException {
+        this.reader.beginObject();
+        while (this.reader.hasNext()) {
+            if (this.reader.nextName().equals(this.key) && this.reader.peek() == JsonToken.BEGIN_ARRAY) {
+                this.reader.beginArray();
+                this.inArray = true;
+                return;
+            }
+            this.reader.skipValue();
+        }
+        this.reader.endObject();
+    }
+
+    private void skipRemainingObject() throws IOException {
+        while (this.reader.hasNext()) {
+            this.reader.nextName();
+            this.reader.skipValue();
+        }
+        this.reader.endObject();
+    }
+
+}
@@ -3,25 +3,246 @@ package com.github.derrop.documents.storage;
 import com.github.derrop.documents.DefaultDocument;
 import com.github.derrop.documents.Document;
 import com.github.derrop.documents.Documents;
+import com.github.derrop.documents.LazyDocument;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonWriter;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 public class JsonDocumentStorage implements DocumentStorage {
 
+    private final ThreadLocal<Utf8JsonReader> utf8Reader = ThreadLocal.withInitial(Utf8JsonReader::new);
+    private final Gson gson;
+
+    public JsonDocumentStorage() {
+        this(null);
+    }
+
+    /**
+     * @param gson the Gson instance whose settings (pretty printing, HTML escaping, nulls, type adapters) are used
+     *             to write documents, {@code null} to always use {@link DefaultDocument#GSON}
+     */
+    public JsonDocumentStorage(Gson gson) {
+        this.gson = gson;
+    }
+
+    public Gson getGson() {
+        return this.gson != null ? this.gson : DefaultDocument.GSON;
+    }
+
     public void write(Document document, Writer writer) {
-        DefaultDocument.GSON.toJson(document.toJsonObject(), writer);
+        try {
+            JsonWriter jsonWriter = this.getGson().newJsonWriter(writer);
+            jsonWriter.setLenient(true);
+            if (document instanceof DefaultDocument) {
+                // keeps the values of lazy documents that haven't been parsed as they are
+                DefaultDocument.TYPE_ADAPTER.write(jsonWriter, (DefaultDocument) document);
+            } else {
+                DefaultDocument.ELEMENT_ADAPTER.write(jsonWriter, document.toJsonObject());
+            }
+        } catch (IOException exception) {
+            throw new JsonIOException(exception);
+        }
+    }
+
+    /**
+     * Writes the document like {@link #write(Document, Writer)} with exactly the same output, but serializes groups of
+     * its top level values and chunks of large top level arrays on the common {@link ForkJoinPool} and writes them in
+     * order. Only useful for large documents, small ones are written faster by {@link #write(Document, Writer)}.
+     * Values of a {@link LazyDocument} that haven't been parsed yet are kept as they are, so lazy documents are
+     * written sequentially.
+     */
+    public void writeParallel(Document document, Writer writer) {
+        if (document instanceof LazyDocument) {
+            this.write(document, writer);
+            return;
+        }
+
+        try {
+            new ParallelJsonWriter(this.getGson(), ForkJoinPool.commonPool()).write(document.toJsonObject(), writer);
+        } catch (IOException exception) {
+            throw new JsonIOException(exception);
+        }
+    }
+
+    public void writeParallel(Document document, OutputStream outputStream) {
+        try (OutputStream closeable = outputStream) {
+            Utf8ByteWriter writer = Utf8ByteWriter.acquire(closeable);
+            try {
+                this.writeParallel(document, writer);
+                writer.flush();
+            } finally {
+                writer.release();
+            }
+        } catch (Exception exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    public void writeParallel(Document document, Path path) {
+        Path parent = path.getParent();
+        try {
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (OutputStream stream = Files.newOutputStream(path)) {
+                this.writeParallel(document, stream);
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the object directly with the type adapters of {@link #getGson()}.
+     */
+    @Override
+    public void writeObject(Object object, Writer writer) {
+        if (object instanceof Document) {
+            this.write((Document) object, writer);
+            return;
+        }
+
+        try {
+            JsonWriter jsonWriter = this.getGson().newJsonWriter(writer);
+            this.getGson().toJson(object, object == null ? Object.class : object.getClass(), jsonWriter);
+            jsonWriter.flush();
+        } catch (IOException exception) {
+            throw new JsonIOException(exception);
+        }
+    }
+
+    /**
+     * Reads the object directly with the type adapters of {@link #getGson()}, without creating a tree.
+     */
+    @Override
+    public <T> T readObject(Reader reader, Type type) {
+        try (Reader closeable = reader) {
+            return this.getGson().fromJson(closeable, type);
+        } catch (IOException | JsonParseException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public <T> T readObject(InputStream inputStream, Type type) {
+        return this.readObject(new InputStreamReader(inputStream, StandardCharsets.UTF_8), type);
     }
 
     public Document read(Reader reader) {
-        try (BufferedReader bufferedReader = new BufferedReader(reader)) {
-            return Documents.newDocument(JsonParser.parseReader(bufferedReader).getAsJsonObject());
+        // JsonReader is buffered on its own, no need for another BufferedReader in between
+        try (Reader closeable = reader) {
+            return Documents.newDocument(JsonParser.parseReader(closeable).getAsJsonObject());
         } catch (Exception ex) {
-            ex.getStackTrace();
+            ex.printStackTrace();
         }
         return null;
     }
 
+    @Override
+    public Document read(byte[] bytes) {
+        try {
+            return this.toDocument(this.utf8Reader.get().read(bytes));
+        } catch (JsonSyntaxException exception) {
+            // the lenient Gson parser accepts more than the strict UTF-8 parser
+            return this.readLenient(new ByteArrayInputStream(bytes));
+        }
+    }
+
+    @Override
+    public Document read(ByteBuffer buffer) {
+        int position = buffer.position();
+        try {
+            return this.toDocument(this.utf8Reader.get().read(buffer));
+        } catch (JsonSyntaxException exception) {
+            // cast to Buffer, ByteBuffer#position(int) doesn't exist on Java 8
+            byte[] bytes = new byte[((Buffer) buffer).position(position).remaining()];
+            buffer.get(bytes);
+            return this.readLenient(new ByteArrayInputStream(bytes));
+        }
+    }
+
+    @Override
+    public Document read(InputStream inputStream) {
+        // the stream can't be reset for the lenient Gson parser, so it is read completely first
+        byte[] bytes;
+        try (InputStream closeable = inputStream) {
+            bytes = readFully(closeable);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return null;
+        }
+        return this.read(bytes);
+    }
+
+    @Override
+    public Document read(Path path) {
+        try (InputStream stream = Files.newInputStream(path)) {
+            return this.toDocument(this.utf8Reader.get().read(stream));
+        } catch (JsonSyntaxException exception) {
+            // the stream can't be reset, so let the lenient Gson parser try again on a fresh one
+            try (InputStream stream = Files.newInputStream(path)) {
+                return this.readLenient(stream);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        } catch (IOException | JsonParseException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Streams the objects of any number of concatenated or newline delimited root values, the elements of root
+     * arrays are streamed one by one.
+     */
+    @Override
+    public Stream<Document> stream(Reader reader, String key) {
+        return new JsonDocumentIterator(reader, key).stream(reader);
+    }
+
+    @Override
+    public Stream<Document> stream(InputStream inputStream, String key) {
+        return this.stream(new InputStreamReader(inputStream, StandardCharsets.UTF_8), key);
+    }
+
+    private Document readLenient(InputStream inputStream) {
+        return this.read(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, length);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private Document toDocument(JsonElement element) {
+        return element.isJsonObject() ? Documents.newDocument(element.getAsJsonObject()) : null;
+    }
+
 }
@@ -0,0 +1,68 @@
+package com.github.derrop.documents.storage;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Releases mapped buffers right away instead of waiting for the garbage collector, which Java has no public API for.
+ * As long as a file is mapped, Windows doesn't allow to truncate, replace or delete it.
+ * <p>
+ * Uses {@code sun.misc.Unsafe#invokeCleaner} on Java 9 and later and the cleaner of the buffer on Java 8, like
+ * Lucene does. If neither is accessible, the buffers are left to the garbage collector.
+ */
+final class MappedBuffers {
+
+    private static final MethodHandle UNMAP = findUnmap();
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * Unmaps the given buffer, it must not be accessed afterwards by anyone, otherwise the JVM crashes.
+     *
+     * @return whether the buffer has been unmapped
+     */
+    static boolean unmap(MappedByteBuffer buffer) {
+        if (UNMAP == null) {
+            return false;
+        }
+        try {
+            UNMAP.invoke(buffer);
+            return true;
+        } catch (Throwable throwable) {
+            return false;
+        }
+    }
+
+    private static MethodHandle findUnmap() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return lookup.unreflect(invokeCleaner).bindTo(field.get(null))
+                    .asType(MethodType.methodType(void.class, MappedByteBuffer.class));
+        } catch (ReflectiveOperationException | RuntimeException exception) {
+            // Java 8
+        }
+        try {
+            Method cleaner = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            clean.setAccessible(true);
+            MethodHandle getCleaner = lookup.unreflect(cleaner).asType(MethodType.methodType(Object.class, MappedByteBuffer.class));
+            MethodHandle doClean = lookup.unreflect(clean).asType(MethodType.methodType(void.class, Object.class));
+            return MethodHandles.filterReturnValue(getCleaner, doClean);
+        } catch (ReflectiveOperationException | RuntimeException exception) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.Document;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+/**
+ * Reads and writes files through memory mapped {@link FileChannel}s once they reach a size threshold, smaller files
+ * keep going through the regular streams of the wrapped storage.
+ * <p>
+ * Reading hands the mapped buffer to {@link DocumentStorage#read(ByteBuffer)}, so the JSON storage parses the
+ * mapped bytes directly and the YAML storage decodes them without an intermediate stream. Writing encodes UTF-8
+ * straight into mapped regions of a temporary file next to the target, which replaces the target once it has been
+ * forced to the disk, so a failed write never leaves a partially written file behind. For writes the size of the
+ * existing file is used as the hint whether the file is large.
+ * <p>
+ * Java can only release a mapping through the garbage collector, so the mappings are unmapped with the internal APIs
+ * of the JVM where they are accessible. On Windows a file can't be truncated, replaced or deleted while it is
+ * mapped, if unmapping isn't possible there, moving the written file into place or writing the file again shortly
+ * after reading it may fail until the mapping has been collected. The mapping of a read file is only released for
+ * the JSON, YAML and binary storages of this library, other storages may keep the buffer.
+ */
+public class MappedDocumentStorage implements DocumentStorage {
+
+    public static final long DEFAULT_THRESHOLD = 8 * 1024 * 1024;
+
+    private static final long WRITE_REGION_SIZE = 64 * 1024 * 1024;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final DocumentStorage storage;
+    private final long threshold;
+
+    public MappedDocumentStorage(DocumentStorage storage) {
+        this(storage, DEFAULT_THRESHOLD);
+    }
+
+    public MappedDocumentStorage(DocumentStorage storage, long threshold) {
+        this.storage = storage;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public Document read(Path path) {
+        try {
+            long size = Files.size(path);
+            // a single mapped buffer can't be larger than Integer.MAX_VALUE
+            if (size < this.threshold || size > Integer.MAX_VALUE) {
+                return this.storage.read(path);
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                try {
+                    return this.storage.read(buffer);
+                } finally {
+                    if (this.releasesBuffers()) {
+                        MappedBuffers.unmap(buffer);
+                    }
+                }
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public void write(Document document, Path path) {
+        try {
+            if (!Files.exists(path) || Files.size(path) < this.threshold) {
+                this.storage.write(document, path);
+                return;
+            }
+
+            this.writeMapped(document, path);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    private void writeMapped(Document document, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // closing the writer releases the mapped regions and truncates the file, even if writing failed
+                try (Writer writer = new MappedFileWriter(channel, WRITE_REGION_SIZE)) {
+                    this.storage.write(document, writer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException exception) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                exception.addSuppressed(suppressed);
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * @return whether the wrapped storage is known not to keep a buffer after reading it, so it can be unmapped
+     */
+    private boolean releasesBuffers() {
+        Class<?> type = this.storage.getClass();
+        return type == JsonDocumentStorage.class || type == YamlDocumentStorage.class || type == BinaryDocumentStorage.class;
+    }
+
+    @Override
+    public Document read(InputStream inputStream) {
+        return this.storage.read(inputStream);
+    }
+
+    @Override
+    public Document read(byte[] bytes) {
+        return this.storage.read(bytes);
+    }
+
+    @Override
+    public Document read(ByteBuffer buffer) {
+        return this.storage.read(buffer);
+    }
+
+    @Override
+    public Document read(String input) {
+        return this.storage.read(input);
+    }
+
+    @Override
+    public Document read(Reader reader) {
+        return this.storage.read(reader);
+    }
+
+    @Override
+    public Stream<Document> stream(Reader reader, String key) {
+        return this.storage.stream(reader, key);
+    }
+
+    @Override
+    public Stream<Document> stream(InputStream inputStream, String key) {
+        return this.storage.stream(inputStream, key);
+    }
+
+    @Override
+    public Stream<Document> stream(Path path, String key) {
+        return this.storage.stream(path, key);
+    }
+
+    @Override
+    public void write(Document document, OutputStream outputStream) {
+        this.storage.write(document, outputStream);
+    }
+
+    @Override
+    public String toString(Document document) {
+        return this.storage.toString(document);
+    }
+
+    @Override
+    public int write(Document document, ByteBuffer buffer) {
+        return this.storage.write(document, buffer);
+    }
+
+    @Override
+    public byte[] toByteArray(Document document) {
+        return this.storage.toByteArray(document);
+    }
+
+    @Override
+    public void write(Document document, Writer writer) {
+        this.storage.write(document, writer);
+    }
+
+    @Override
+    public void writeObject(Object object, Writer writer) {
+        this.storage.writeObject(object, writer);
+    }
+
+    @Override
+    public void writeObject(Object object, OutputStream outputStream) {
+        this.storage.writeObject(object, outputStream);
+    }
+
+    @Override
+    public <T> T readObject(Reader reader, Type type) {
+        return this.storage.readObject(reader, type);
+    }
+
+    @Override
+    public <T> T readObject(InputStream inputStream, Type type) {
+        return this.storage.readObject(inputStream, type);
+    }
+
+}
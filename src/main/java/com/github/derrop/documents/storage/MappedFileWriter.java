@@ -0,0 +1,133 @@
+package com.github.derrop.documents.storage;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Encodes characters as UTF-8 straight into memory mapped regions of a file. The file grows region by region and
+ * is truncated to the written length on {@link #close()}, the channel itself is left open.
+ * <p>
+ * Every region is forced to the disk and unmapped as soon as the next one is mapped, the file is only truncated
+ * after the last region has been released, because Windows doesn't allow to truncate a mapped file. If mapping a
+ * region fails, {@link #close()} throws as well, so callers that swallow the first exception don't mistake the
+ * file for complete.
+ */
+public class MappedFileWriter extends Writer {
+
+    private final FileChannel channel;
+    private final long regionSize;
+
+    private MappedByteBuffer buffer;
+    private long regionStart;
+    private char highSurrogate;
+    private boolean failed;
+
+    public MappedFileWriter(FileChannel channel, long regionSize) throws IOException {
+        this.channel = channel;
+        this.regionSize = regionSize;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, regionSize);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        this.writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            this.writeChar(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            this.writeChar(str.charAt(i));
+        }
+    }
+
+    private void writeChar(char c) throws IOException {
+        if (this.buffer == null) {
+            throw new IOException(this.failed ? "Mapping the file failed" : "Writer closed");
+        }
+        if (this.buffer.remaining() < 4) {
+            this.regionStart += this.buffer.position();
+            this.release();
+            try {
+                this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, this.regionStart, this.regionSize);
+            } catch (IOException exception) {
+                this.failed = true;
+                throw exception;
+            }
+        }
+
+        if (this.highSurrogate != 0) {
+            char high = this.highSurrogate;
+            this.highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                this.buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                this.buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                this.buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                this.buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                return;
+            }
+            this.buffer.put((byte) '?');
+            this.writeChar(c);
+            return;
+        }
+
+        if (c < 0x80) {
+            this.buffer.put((byte) c);
+        } else if (c < 0x800) {
+            this.buffer.put((byte) (0xC0 | (c >> 6)));
+            this.buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c)) {
+            this.highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            this.buffer.put((byte) '?');
+        } else {
+            this.buffer.put((byte) (0xE0 | (c >> 12)));
+            this.buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            this.buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+
+    @Override
+    public void flush() {
+        // the mapped regions are written back by the operating system
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.failed) {
+            throw new IOException("Mapping the file failed");
+        }
+        if (this.buffer == null) {
+            return;
+        }
+        if (this.highSurrogate != 0) {
+            this.highSurrogate = 0;
+            this.buffer.put((byte) '?');
+        }
+
+        long size = this.regionStart + this.buffer.position();
+        this.release();
+        this.channel.truncate(size);
+    }
+
+    /**
+     * Writes the current region to the disk and unmaps it, it is left to the garbage collector if unmapping isn't
+     * possible.
+     */
+    private void release() {
+        MappedByteBuffer buffer = this.buffer;
+        this.buffer = null;
+        buffer.force();
+        MappedBuffers.unmap(buffer);
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.Document;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the files of a directory in parallel on the common {@link ForkJoinPool}, used by
+ * {@link DocumentStorage#readAll(Path, String)}, {@link DocumentStorage#streamAll(Path, String)} and
+ * {@link com.github.derrop.documents.Documents#readAll(Path, String)}. The storages can be used by multiple threads,
+ * the parsers are kept per thread.
+ * <p>
+ * The files are selected with a glob that is matched against their paths relative to the directory, like
+ * {@code *.json} for the files directly in the directory or {@code **}{@code /*.json} for the ones in its
+ * subdirectories.
+ */
+public final class ParallelDocumentReader {
+
+    private ParallelDocumentReader() {
+    }
+
+    /**
+     * Reads the matching files with the storage returned by the given function for each file, files for which it
+     * returns {@code null} are skipped.
+     *
+     * @return the documents sorted by their paths, files that cannot be read are left out
+     */
+    public static Map<Path, Document> readAll(Path directory, String glob, Function<Path, DocumentStorage> storages) {
+        try {
+            return readAll(list(directory, glob), storages, ForkJoinPool.commonPool());
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Like {@link #readAll(Path, String, Function)}, but returns the documents in the order they have been read while
+     * the stream is consumed. At most the given number of files are read ahead of the consumer, so that not all
+     * documents have to be kept in memory. Closing the stream skips the remaining files.
+     */
+    public static Stream<Map.Entry<Path, Document>> stream(Path directory, String glob, Function<Path, DocumentStorage> storages, int maxInFlight) {
+        try {
+            return stream(list(directory, glob), storages, ForkJoinPool.commonPool(), maxInFlight);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * @return the files in the given directory and its subdirectories whose path relative to the directory matches the
+     * given glob, sorted by their path
+     */
+    static List<Path> list(Path directory, String glob) throws IOException {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths
+                    .filter(path -> matcher.matches(directory.relativize(path)) && Files.isRegularFile(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Reads all given files with the storage returned by the given function for each file.
+     *
+     * @return the documents in the order of the files, files that cannot be read are left out
+     */
+    static Map<Path, Document> readAll(List<Path> paths, Function<Path, DocumentStorage> storages, ForkJoinPool pool) {
+        Document[] documents = new Document[paths.size()];
+        pool.invoke(new ReadAction(paths, storages, documents, 0, paths.size()));
+
+        Map<Path, Document> result = new LinkedHashMap<>(paths.size() * 4 / 3 + 1);
+        for (int i = 0; i < documents.length; i++) {
+            if (documents[i] != null) {
+                result.put(paths.get(i), documents[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the given files in parallel while the returned stream is consumed, in the order in which they are
+     * finished. At most the given number of files are read or waiting to be consumed at the same time, so a slow
+     * consumer doesn't cause all documents to be kept in memory. Files that cannot be read are left out.
+     */
+    static Stream<Map.Entry<Path, Document>> stream(List<Path> paths, Function<Path, DocumentStorage> storages,
+                                                    ForkJoinPool pool, int maxInFlight) {
+        ReadSpliterator spliterator = new ReadSpliterator(paths, storages, pool, maxInFlight);
+        return StreamSupport.stream(spliterator, false).onClose(() -> spliterator.closed = true);
+    }
+
+    /**
+     * @return the document in the given file, {@code null} if it cannot be read, e.g. because a storage throws on
+     * malformed content instead of returning {@code null}, so a single broken file doesn't fail all others
+     */
+    private static Document read(Path path, Function<Path, DocumentStorage> storages) {
+        try {
+            DocumentStorage storage = storages.apply(path);
+            return storage == null ? null : storage.read(path);
+        } catch (RuntimeException exception) {
+            exception.printStackTrace();
+            return null;
+        }
+    }
+
+    private static final class ReadAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> paths;
+        private final Function<Path, DocumentStorage> storages;
+        private final Document[] documents;
+        private final int from;
+        private final int to;
+
+        private ReadAction(List<Path> paths, Function<Path, DocumentStorage> storages, Document[] documents, int from, int to) {
+            this.paths = paths;
+            this.storages = storages;
+            this.documents = documents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= 1) {
+                if (this.to == this.from) {
+                    return;
+                }
+                this.documents[this.from] = read(this.paths.get(this.from), this.storages);
+                return;
+            }
+
+            // files are split down to single ones because their sizes and parsing times differ a lot
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(
+                    new ReadAction(this.paths, this.storages, this.documents, this.from, middle),
+                    new ReadAction(this.paths, this.storages, this.documents, middle, this.to)
+            );
+        }
+
+    }
+
+    private static final class ReadSpliterator extends Spliterators.AbstractSpliterator<Map.Entry<Path, Document>> {
+
+        /**
+         * The result of a file that couldn't be read.
+         */
+        private static final Map.Entry<Path, Document> FAILED = new AbstractMap.SimpleImmutableEntry<>(null, null);
+
+        private final List<Path> paths;
+        private final Function<Path, DocumentStorage> storages;
+        private final ForkJoinPool pool;
+        private final int maxInFlight;
+        private final BlockingQueue<Map.Entry<Path, Document>> results = new LinkedBlockingQueue<>();
+
+        private int submitted;
+        private int consumed;
+        private volatile boolean closed;
+
+        private ReadSpliterator(List<Path> paths, Function<Path, DocumentStorage> storages, ForkJoinPool pool, int maxInFlight) {
+            super(paths.size(), Spliterator.DISTINCT | Spliterator.NONNULL);
+            this.paths = paths;
+            this.storages = storages;
+            this.pool = pool;
+            this.maxInFlight = Math.max(1, maxInFlight);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<Path, Document>> action) {
+            while (this.consumed < this.paths.size()) {
+                // submit only as many files as may be in flight, the next ones are submitted once these are consumed
+                while (this.submitted < this.paths.size() && this.submitted - this.consumed < this.maxInFlight) {
+                    Path path = this.paths.get(this.submitted++);
+                    this.pool.execute(() -> this.read(path));
+                }
+
+                Map.Entry<Path, Document> result;
+                try {
+                    result = this.results.take();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                this.consumed++;
+                if (result != FAILED) {
+                    action.accept(result);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void read(Path path) {
+            Map.Entry<Path, Document> result = FAILED;
+            try {
+                Document document = this.closed ? null : ParallelDocumentReader.read(path, this.storages);
+                if (document != null) {
+                    result = new AbstractMap.SimpleImmutableEntry<>(path, document);
+                }
+            } finally {
+                this.results.add(result);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,220 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.DefaultDocument;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes a JSON object with the settings of a Gson instance, but serializes groups of its entries and chunks of large
+ * arrays in it on a {@link ForkJoinPool} and writes the results in order, used by
+ * {@link JsonDocumentStorage#writeParallel(com.github.derrop.documents.Document, Writer)}.
+ * <p>
+ * Every part is written by its own {@link JsonWriter} that is nested exactly like the part in the whole object, so
+ * the indentation of pretty printing is the same. Only the text between the start and the end of the part is kept,
+ * and the separators between the parts are added when they are concatenated, so the output is identical to writing
+ * the whole object with a single writer. To limit the memory, only a few parts are serialized ahead of the writer.
+ */
+final class ParallelJsonWriter {
+
+    private static final int ENTRIES_PER_PART = 32;
+    private static final int ELEMENTS_PER_PART = 512;
+
+    private static final int ENTRIES = 0;
+    private static final int ARRAY_START = 1;
+    private static final int ARRAY_ELEMENTS = 2;
+    private static final int ARRAY_END = 3;
+
+    private final Gson gson;
+    private final ForkJoinPool pool;
+    private final int maxInFlight;
+
+    ParallelJsonWriter(Gson gson, ForkJoinPool pool) {
+        this.gson = gson;
+        this.pool = pool;
+        this.maxInFlight = pool.getParallelism() * 4;
+    }
+
+    void write(JsonObject root, Writer writer) throws IOException {
+        List<Part> parts = this.split(root);
+
+        Deque<Part> inFlight = new ArrayDeque<>();
+        int next = 0;
+        boolean entryWritten = false;
+        boolean elementWritten = false;
+
+        writer.write('{');
+        while (next < parts.size() || !inFlight.isEmpty()) {
+            while (next < parts.size() && inFlight.size() < this.maxInFlight) {
+                Part part = parts.get(next++);
+                part.task = this.pool.submit(part.serializer);
+                inFlight.add(part);
+            }
+
+            Part part = inFlight.poll();
+            String text = part.task.join();
+            switch (part.kind) {
+                case ENTRIES:
+                    // entries that are all skipped because they are null produce no text
+                    if (text.isEmpty()) {
+                        break;
+                    }
+                    if (entryWritten) {
+                        writer.write(',');
+                    }
+                    writer.write(text);
+                    entryWritten = true;
+                    break;
+                case ARRAY_START:
+                    if (entryWritten) {
+                        writer.write(',');
+                    }
+                    writer.write(text);
+                    entryWritten = true;
+                    elementWritten = false;
+                    break;
+                case ARRAY_ELEMENTS:
+                    if (elementWritten) {
+                        writer.write(',');
+                    }
+                    writer.write(text);
+                    elementWritten = true;
+                    break;
+                default:
+                    writer.write(text);
+                    break;
+            }
+        }
+        writer.write(entryWritten ? this.objectEnd() : "}");
+    }
+
+    private List<Part> split(JsonObject root) {
+        List<Part> parts = new ArrayList<>();
+        List<Map.Entry<String, JsonElement>> group = new ArrayList<>();
+        for (Map.Entry<String, JsonElement> entry : root.entrySet()) {
+            JsonElement value = entry.getValue();
+            if (!value.isJsonArray() || value.getAsJsonArray().size() <= ELEMENTS_PER_PART) {
+                group.add(entry);
+                if (group.size() == ENTRIES_PER_PART) {
+                    parts.add(this.entries(group));
+                    group = new ArrayList<>();
+                }
+                continue;
+            }
+
+            if (!group.isEmpty()) {
+                parts.add(this.entries(group));
+                group = new ArrayList<>();
+            }
+            String key = entry.getKey();
+            JsonArray array = value.getAsJsonArray();
+            parts.add(new Part(ARRAY_START, () -> this.arrayStart(key)));
+            for (int from = 0; from < array.size(); from += ELEMENTS_PER_PART) {
+                int start = from;
+                int end = Math.min(array.size(), from + ELEMENTS_PER_PART);
+                parts.add(new Part(ARRAY_ELEMENTS, () -> this.arrayElements(key, array, start, end)));
+            }
+            parts.add(new Part(ARRAY_END, () -> this.arrayEnd(key)));
+        }
+        if (!group.isEmpty()) {
+            parts.add(this.entries(group));
+        }
+        return parts;
+    }
+
+    private Part entries(List<Map.Entry<String, JsonElement>> entries) {
+        return new Part(ENTRIES, () -> {
+            StringWriter output = new StringWriter();
+            JsonWriter jsonWriter = this.newJsonWriter(output);
+            jsonWriter.beginObject();
+            int start = output.getBuffer().length();
+            for (Map.Entry<String, JsonElement> entry : entries) {
+                jsonWriter.name(entry.getKey());
+                DefaultDocument.ELEMENT_ADAPTER.write(jsonWriter, entry.getValue());
+            }
+            return output.getBuffer().substring(start);
+        });
+    }
+
+    /**
+     * @return the text from the separator before the key to the opening bracket of the array
+     */
+    private String arrayStart(String key) throws IOException {
+        StringWriter output = new StringWriter();
+        JsonWriter jsonWriter = this.newJsonWriter(output);
+        jsonWriter.beginObject();
+        int start = output.getBuffer().length();
+        jsonWriter.name(key).beginArray();
+        return output.getBuffer().substring(start);
+    }
+
+    private String arrayElements(String key, JsonArray array, int from, int to) throws IOException {
+        StringWriter output = new StringWriter();
+        JsonWriter jsonWriter = this.newJsonWriter(output);
+        jsonWriter.beginObject().name(key).beginArray();
+        int start = output.getBuffer().length();
+        for (int i = from; i < to; i++) {
+            DefaultDocument.ELEMENT_ADAPTER.write(jsonWriter, array.get(i));
+        }
+        return output.getBuffer().substring(start);
+    }
+
+    /**
+     * @return the text that closes a non-empty array in the root object
+     */
+    private String arrayEnd(String key) throws IOException {
+        StringWriter output = new StringWriter();
+        JsonWriter jsonWriter = this.newJsonWriter(output);
+        jsonWriter.beginObject().name(key).beginArray().nullValue();
+        int start = output.getBuffer().length();
+        jsonWriter.endArray();
+        return output.getBuffer().substring(start);
+    }
+
+    /**
+     * @return the text that closes a non-empty root object
+     */
+    private String objectEnd() throws IOException {
+        StringWriter output = new StringWriter();
+        JsonWriter jsonWriter = this.newJsonWriter(output);
+        jsonWriter.beginObject().name("").value(0);
+        int start = output.getBuffer().length();
+        jsonWriter.endObject();
+        return output.getBuffer().substring(start);
+    }
+
+    private JsonWriter newJsonWriter(Writer writer) throws IOException {
+        // the same settings as JsonDocumentStorage.write
+        JsonWriter jsonWriter = this.gson.newJsonWriter(writer);
+        jsonWriter.setLenient(true);
+        return jsonWriter;
+    }
+
+    private static final class Part {
+
+        private final int kind;
+        private final Callable<String> serializer;
+        private ForkJoinTask<String> task;
+
+        private Part(int kind, Callable<String> serializer) {
+            this.kind = kind;
+            this.serializer = serializer;
+        }
+
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.github.derrop.documents.storage;
+
+import java.io.Writer;
+
+/**
+ * A writer into a {@link StringBuilder} that is reused by the same thread, unlike a {@link java.io.StringWriter}
+ * which allocates and grows a new synchronized buffer for every string.
+ * <p>
+ * Instances are taken from a pool per thread with {@link #acquire()} and have to be returned with
+ * {@link #release()}.
+ */
+public final class PooledStringWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 1024;
+    /**
+     * Builders that have grown larger than this while writing a large document are not kept in the pool.
+     */
+    private static final int MAX_POOLED_SIZE = 128 * 1024;
+
+    private static final ThreadLocal<PooledStringWriter> POOL = ThreadLocal.withInitial(PooledStringWriter::new);
+
+    private StringBuilder builder = new StringBuilder(BUFFER_SIZE);
+    private boolean acquired;
+
+    private PooledStringWriter() {
+    }
+
+    public static PooledStringWriter acquire() {
+        PooledStringWriter writer = POOL.get();
+        if (writer.acquired) {
+            // still used further up the stack, e.g. by a type adapter that serializes another document
+            writer = new PooledStringWriter();
+        }
+        writer.acquired = true;
+        return writer;
+    }
+
+    /**
+     * Returns this writer to the pool, the written characters are discarded.
+     */
+    public void release() {
+        if (this.builder.capacity() > MAX_POOLED_SIZE) {
+            this.builder = new StringBuilder(BUFFER_SIZE);
+        } else {
+            this.builder.setLength(0);
+        }
+        this.acquired = false;
+    }
+
+    @Override
+    public void write(int c) {
+        this.builder.append((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        this.builder.append(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        this.builder.append(str, off, off + len);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        this.builder.append(csq);
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) {
+        this.builder.append(csq, start, end);
+        return this;
+    }
+
+    @Override
+    public Writer append(char c) {
+        this.builder.append(c);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Does nothing, the writer stays usable until it is released.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return the characters that have been written
+     */
+    @Override
+    public String toString() {
+        return this.builder.toString();
+    }
+
+}
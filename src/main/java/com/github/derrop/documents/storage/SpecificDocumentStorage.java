@@ -3,6 +3,7 @@ package com.github.derrop.documents.storage;
 import com.github.derrop.documents.Document;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -19,6 +20,15 @@ public interface SpecificDocumentStorage {
 
     String serializeToString();
 
+    byte[] toByteArray();
+
+    /**
+     * Writes the document into the given buffer, starting at its position.
+     *
+     * @throws java.nio.BufferOverflowException if the document doesn't fit into the remaining bytes of the buffer
+     */
+    SpecificDocumentStorage write(ByteBuffer buffer);
+
     SpecificDocumentStorage write(Writer writer);
 
 }
@@ -0,0 +1,263 @@
+package com.github.derrop.documents.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes characters as UTF-8 straight into a reusable byte buffer, without an intermediate string or
+ * {@link java.nio.charset.CharsetEncoder}. The bytes are either collected for {@link #toByteArray()}, or passed on to
+ * an output stream or a byte buffer whenever the buffer is full, so large documents don't have to fit into memory.
+ * Binary formats can write their bytes unchanged through {@link #outputStream()}.
+ * <p>
+ * Instances are taken from a pool per thread with the acquire methods and have to be returned with
+ * {@link #release()}, so serializing a small document doesn't allocate any buffers. {@link #close()} only flushes,
+ * because some writers close their output when they are done. Unpaired surrogates are written as {@code ?} like
+ * {@link String#getBytes(java.nio.charset.Charset)} does.
+ */
+public final class Utf8ByteWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Buffers that have grown larger than this while collecting a large document are not kept in the pool.
+     */
+    private static final int MAX_POOLED_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<Utf8ByteWriter> POOL = ThreadLocal.withInitial(Utf8ByteWriter::new);
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private char highSurrogate;
+
+    private OutputStream out;
+    private ByteBuffer target;
+    private boolean acquired;
+    private OutputStream outputStream;
+
+    private Utf8ByteWriter() {
+    }
+
+    /**
+     * @return a writer that collects all bytes for {@link #toByteArray()}
+     */
+    public static Utf8ByteWriter acquire() {
+        return acquire(null, null);
+    }
+
+    /**
+     * @return a writer that passes the bytes on to the given stream, the stream is not closed by the writer
+     */
+    public static Utf8ByteWriter acquire(OutputStream out) {
+        return acquire(out, null);
+    }
+
+    /**
+     * @return a writer that puts the bytes into the given buffer, writing more than its remaining bytes throws a
+     * {@link BufferOverflowException} once the bytes are flushed
+     */
+    public static Utf8ByteWriter acquire(ByteBuffer target) {
+        return acquire(null, target);
+    }
+
+    private static Utf8ByteWriter acquire(OutputStream out, ByteBuffer target) {
+        Utf8ByteWriter writer = POOL.get();
+        if (writer.acquired) {
+            // still used further up the stack, e.g. by a type adapter that serializes another document
+            writer = new Utf8ByteWriter();
+        }
+        writer.acquired = true;
+        writer.out = out;
+        writer.target = target;
+        return writer;
+    }
+
+    /**
+     * Returns this writer to the pool, bytes that haven't been flushed are discarded.
+     */
+    public void release() {
+        this.out = null;
+        this.target = null;
+        this.position = 0;
+        this.highSurrogate = 0;
+        if (this.buffer.length > MAX_POOLED_SIZE) {
+            this.buffer = new byte[BUFFER_SIZE];
+        }
+        this.acquired = false;
+    }
+
+    /**
+     * @return a stream that writes bytes into this writer as they are
+     */
+    public OutputStream outputStream() {
+        if (this.outputStream == null) {
+            this.outputStream = new ByteOutputStream();
+        }
+        return this.outputStream;
+    }
+
+    /**
+     * @return the number of bytes that have been written and not yet flushed
+     */
+    public int size() {
+        return this.position;
+    }
+
+    /**
+     * @return a copy of the bytes that have been written and not yet flushed
+     */
+    public byte[] toByteArray() {
+        this.finish();
+        return Arrays.copyOf(this.buffer, this.position);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        this.ensureRemaining(4);
+        this.writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            this.ensureRemaining(4);
+            this.writeChar(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            this.ensureRemaining(4);
+            this.writeChar(str.charAt(i));
+        }
+    }
+
+    private void writeChar(char c) {
+        byte[] buffer = this.buffer;
+        if (this.highSurrogate != 0) {
+            char high = this.highSurrogate;
+            this.highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer[this.position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[this.position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[this.position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[this.position++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            // there is room for the replacement and the character, one of them is at most 3 bytes long
+            buffer[this.position++] = '?';
+        }
+
+        if (c < 0x80) {
+            buffer[this.position++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[this.position++] = (byte) (0xC0 | (c >> 6));
+            buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            this.highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[this.position++] = '?';
+        } else {
+            buffer[this.position++] = (byte) (0xE0 | (c >> 12));
+            buffer[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    /**
+     * Writes the replacement for a high surrogate at the end of the input.
+     */
+    private void finish() {
+        if (this.highSurrogate != 0) {
+            this.highSurrogate = 0;
+            if (this.position == this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+            }
+            this.buffer[this.position++] = '?';
+        }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (this.buffer.length - this.position >= bytes) {
+            return;
+        }
+        if (this.out != null || this.target != null) {
+            this.drain();
+        }
+        if (this.buffer.length - this.position < bytes) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + bytes));
+        }
+    }
+
+    private void drain() throws IOException {
+        if (this.out != null) {
+            this.out.write(this.buffer, 0, this.position);
+        } else if (this.target != null) {
+            if (this.target.remaining() < this.position) {
+                // the bytes are kept, so every further flush fails as well
+                throw new BufferOverflowException();
+            }
+            this.target.put(this.buffer, 0, this.position);
+        } else {
+            return;
+        }
+        this.position = 0;
+    }
+
+    /**
+     * Passes the written bytes on to the stream or the buffer of this writer, does nothing for writers that collect
+     * the bytes.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.out == null && this.target == null) {
+            return;
+        }
+        this.finish();
+        this.drain();
+        if (this.out != null) {
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Flushes this writer, it stays usable until it is released.
+     */
+    @Override
+    public void close() throws IOException {
+        this.flush();
+    }
+
+    private final class ByteOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            Utf8ByteWriter.this.ensureRemaining(1);
+            Utf8ByteWriter.this.buffer[Utf8ByteWriter.this.position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Utf8ByteWriter writer = Utf8ByteWriter.this;
+            while (len > 0) {
+                writer.ensureRemaining(Math.min(len, BUFFER_SIZE));
+                int count = Math.min(len, writer.buffer.length - writer.position);
+                System.arraycopy(b, off, writer.buffer, writer.position, count);
+                writer.position += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            Utf8ByteWriter.this.flush();
+        }
+
+    }
+
+}
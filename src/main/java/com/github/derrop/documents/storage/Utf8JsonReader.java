@@ -0,0 +1,585 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.JsonRawValue;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses UTF-8 encoded JSON into Gson trees without decoding the input into a {@link String} or going through a
+ * {@link java.io.Reader} first. Arrays are parsed in place, streams and {@link ByteBuffer}s are read through one
+ * internal buffer that is reused for every call.
+ * <p>
+ * The parser is strict (RFC 8259), input that only the lenient Gson parser accepts results in a
+ * {@link JsonSyntaxException}. Numbers are kept as {@link LazilyParsedNumber}s just like Gson does.
+ * <p>
+ * Instances are not thread safe, the {@link JsonDocumentStorage} keeps one per thread.
+ */
+public class Utf8JsonReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final JsonPrimitive TRUE = new JsonPrimitive(true);
+    private static final JsonPrimitive FALSE = new JsonPrimitive(false);
+
+    private final byte[] window = new byte[BUFFER_SIZE];
+    private char[] chars = new char[64];
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private long consumed;
+
+    private InputStream stream;
+    private ByteBuffer source;
+
+    public JsonElement read(byte[] bytes) {
+        return this.read(bytes, 0, bytes.length);
+    }
+
+    public JsonElement read(byte[] bytes, int offset, int length) {
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+        return this.parseDocument();
+    }
+
+    public JsonElement read(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset() + buffer.position();
+            JsonElement element = this.read(buffer.array(), offset, buffer.remaining());
+            ((Buffer) buffer).position(buffer.limit());
+            return element;
+        }
+
+        this.source = buffer;
+        this.buffer = this.window;
+        return this.parseDocument();
+    }
+
+    public JsonElement read(InputStream stream) {
+        this.stream = stream;
+        this.buffer = this.window;
+        return this.parseDocument();
+    }
+
+    /**
+     * Only reads the keys of the root object in the given array, the values are skipped and added to the returned
+     * object as {@link JsonRawValue}s pointing into the array. The structure of the skipped values is validated
+     * like when they are parsed, so a raw value is always a single valid JSON value, only the encoding of the
+     * characters in strings is checked when they are parsed.
+     */
+    public JsonObject index(byte[] bytes, int offset, int length) {
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+        this.consumed = -this.position;
+        try {
+            this.skipByteOrderMark();
+            if (this.nextToken() != '{') {
+                throw this.syntaxError("Expected an object as the document root");
+            }
+
+            JsonObject object = new JsonObject();
+            int c = this.nextToken();
+            while (c != '}') {
+                if (c != '"') {
+                    throw this.syntaxError("Expected name");
+                }
+                String name = this.readString();
+                if (this.nextToken() != ':') {
+                    throw this.syntaxError("Expected ':'");
+                }
+
+                c = this.nextToken();
+                int start = this.position - 1;
+                this.skipValue(c);
+                object.add(name, new JsonRawValue(bytes, start, this.position - start));
+
+                c = this.nextToken();
+                if (c == ',') {
+                    c = this.nextToken();
+                    if (c == '}') {
+                        throw this.syntaxError("Expected name");
+                    }
+                } else if (c != '}') {
+                    throw this.syntaxError("Unterminated object");
+                }
+            }
+
+            if (this.nextToken() != -1) {
+                throw this.syntaxError("Did not consume the entire document");
+            }
+            return object;
+        } catch (IOException exception) {
+            throw new JsonIOException(exception);
+        } finally {
+            this.buffer = null;
+            this.position = this.limit = 0;
+        }
+    }
+
+    private void skipValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                this.skipObject();
+                break;
+            case '[':
+                this.skipArray();
+                break;
+            case '"':
+                this.skipString();
+                break;
+            case 't':
+                this.expectLiteral("rue");
+                break;
+            case 'f':
+                this.expectLiteral("alse");
+                break;
+            case 'n':
+                this.expectLiteral("ull");
+                break;
+            case -1:
+                throw this.syntaxError("End of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    this.readNumber(c);
+                    break;
+                }
+                throw this.syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Skips an object like {@link #readObject()} reads it, but without creating any elements.
+     */
+    private void skipObject() throws IOException {
+        int c = this.nextToken();
+        if (c == '}') {
+            return;
+        }
+
+        while (true) {
+            if (c != '"') {
+                throw this.syntaxError("Expected name");
+            }
+            this.skipString();
+            if (this.nextToken() != ':') {
+                throw this.syntaxError("Expected ':'");
+            }
+            this.skipValue(this.nextToken());
+
+            c = this.nextToken();
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw this.syntaxError("Unterminated object");
+            }
+            c = this.nextToken();
+        }
+    }
+
+    private void skipArray() throws IOException {
+        int c = this.nextToken();
+        if (c == ']') {
+            return;
+        }
+
+        while (true) {
+            this.skipValue(c);
+
+            c = this.nextToken();
+            if (c == ']') {
+                return;
+            }
+            if (c != ',') {
+                throw this.syntaxError("Unterminated array");
+            }
+            c = this.nextToken();
+        }
+    }
+
+    private void skipString() throws IOException {
+        byte[] buffer = this.buffer;
+        while (this.position < this.limit) {
+            byte b = buffer[this.position++];
+            if (b == '"') {
+                return;
+            } else if (b == '\\') {
+                this.readEscape();
+            }
+        }
+        throw this.syntaxError("Unterminated string");
+    }
+
+    private JsonElement parseDocument() {
+        this.consumed = -this.position;
+        try {
+            this.skipByteOrderMark();
+            JsonElement element = this.readValue(this.nextToken());
+            if (this.nextToken() != -1) {
+                throw this.syntaxError("Did not consume the entire document");
+            }
+            return element;
+        } catch (IOException exception) {
+            throw new JsonIOException(exception);
+        } finally {
+            this.buffer = null;
+            this.stream = null;
+            this.source = null;
+            this.position = this.limit = 0;
+        }
+    }
+
+    private void skipByteOrderMark() throws IOException {
+        if (this.ensure(3) && this.buffer[this.position] == (byte) 0xEF
+                && this.buffer[this.position + 1] == (byte) 0xBB && this.buffer[this.position + 2] == (byte) 0xBF) {
+            this.position += 3;
+        }
+    }
+
+    private JsonElement readValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return this.readObject();
+            case '[':
+                return this.readArray();
+            case '"':
+                return new JsonPrimitive(this.readString());
+            case 't':
+                this.expectLiteral("rue");
+                return TRUE;
+            case 'f':
+                this.expectLiteral("alse");
+                return FALSE;
+            case 'n':
+                this.expectLiteral("ull");
+                return JsonNull.INSTANCE;
+            case -1:
+                throw this.syntaxError("End of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return new JsonPrimitive(new LazilyParsedNumber(this.readNumber(c)));
+                }
+                throw this.syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private JsonObject readObject() throws IOException {
+        JsonObject object = new JsonObject();
+
+        int c = this.nextToken();
+        if (c == '}') {
+            return object;
+        }
+
+        while (true) {
+            if (c != '"') {
+                throw this.syntaxError("Expected name");
+            }
+            String name = this.readString();
+            if (this.nextToken() != ':') {
+                throw this.syntaxError("Expected ':'");
+            }
+            object.add(name, this.readValue(this.nextToken()));
+
+            c = this.nextToken();
+            if (c == '}') {
+                return object;
+            }
+            if (c != ',') {
+                throw this.syntaxError("Unterminated object");
+            }
+            c = this.nextToken();
+        }
+    }
+
+    private JsonArray readArray() throws IOException {
+        JsonArray array = new JsonArray();
+
+        int c = this.nextToken();
+        if (c == ']') {
+            return array;
+        }
+
+        while (true) {
+            array.add(this.readValue(c));
+
+            c = this.nextToken();
+            if (c == ']') {
+                return array;
+            }
+            if (c != ',') {
+                throw this.syntaxError("Unterminated array");
+            }
+            c = this.nextToken();
+        }
+    }
+
+    private String readString() throws IOException {
+        byte[] buffer = this.buffer;
+        int start = this.position;
+        int i = start;
+
+        // fast path: plain ASCII without escapes in the current window
+        while (i < this.limit) {
+            byte b = buffer[i];
+            if (b == '"') {
+                this.position = i + 1;
+                return new String(buffer, start, i - start, StandardCharsets.ISO_8859_1);
+            }
+            if (b == '\\' || b < 0) {
+                break;
+            }
+            i++;
+        }
+
+        int length = 0;
+        for (int j = start; j < i; j++) {
+            length = this.append(length, (char) buffer[j]);
+        }
+        this.position = i;
+
+        while (true) {
+            int b = this.next();
+            if (b == '"') {
+                return new String(this.chars, 0, length);
+            } else if (b == '\\') {
+                length = this.append(length, this.readEscape());
+            } else if (b < 0x80) {
+                if (b == -1) {
+                    throw this.syntaxError("Unterminated string");
+                }
+                length = this.append(length, (char) b);
+            } else if ((b & 0xE0) == 0xC0) {
+                length = this.append(length, (char) (((b & 0x1F) << 6) | this.continuation()));
+            } else if ((b & 0xF0) == 0xE0) {
+                length = this.append(length, (char) (((b & 0x0F) << 12) | (this.continuation() << 6) | this.continuation()));
+            } else if ((b & 0xF8) == 0xF0) {
+                int codePoint = ((b & 0x07) << 18) | (this.continuation() << 12) | (this.continuation() << 6) | this.continuation();
+                length = this.append(length, Character.highSurrogate(codePoint));
+                length = this.append(length, Character.lowSurrogate(codePoint));
+            } else {
+                length = this.append(length, '\uFFFD');
+            }
+        }
+    }
+
+    private int continuation() throws IOException {
+        int b = this.next();
+        if ((b & 0xC0) != 0x80) {
+            throw this.syntaxError("Malformed UTF-8 sequence");
+        }
+        return b & 0x3F;
+    }
+
+    private char readEscape() throws IOException {
+        int c = this.next();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(this.next(), 16);
+                    if (digit == -1) {
+                        throw this.syntaxError("Malformed unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw this.syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private String readNumber(int first) throws IOException {
+        int start = this.position - 1;
+        int i = this.position;
+        while (i < this.limit && isNumberPart(this.buffer[i])) {
+            i++;
+        }
+
+        String number;
+        if (i < this.limit) {
+            this.position = i;
+            number = new String(this.buffer, start, i - start, StandardCharsets.ISO_8859_1);
+        } else {
+            // the number might continue in the next window
+            int length = this.append(0, (char) first);
+            int c;
+            while ((c = this.next()) != -1 && isNumberPart((byte) c)) {
+                length = this.append(length, (char) c);
+            }
+            if (c != -1) {
+                this.position--;
+            }
+            number = new String(this.chars, 0, length);
+        }
+
+        if (!isValidNumber(number)) {
+            throw this.syntaxError("Malformed number " + number);
+        }
+        return number;
+    }
+
+    private static boolean isNumberPart(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    private static boolean isValidNumber(String number) {
+        int i = 0;
+        int length = number.length();
+        if (number.charAt(i) == '-') {
+            i++;
+        }
+        if (i == length) {
+            return false;
+        }
+        if (number.charAt(i) == '0') {
+            i++;
+        } else {
+            int digits = i;
+            while (i < length && Character.isDigit(number.charAt(i))) {
+                i++;
+            }
+            if (i == digits) {
+                return false;
+            }
+        }
+        if (i < length && number.charAt(i) == '.') {
+            int digits = ++i;
+            while (i < length && Character.isDigit(number.charAt(i))) {
+                i++;
+            }
+            if (i == digits) {
+                return false;
+            }
+        }
+        if (i < length && (number.charAt(i) == 'e' || number.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (number.charAt(i) == '+' || number.charAt(i) == '-')) {
+                i++;
+            }
+            int digits = i;
+            while (i < length && Character.isDigit(number.charAt(i))) {
+                i++;
+            }
+            if (i == digits) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (this.next() != rest.charAt(i)) {
+                throw this.syntaxError("Unexpected literal");
+            }
+        }
+    }
+
+    private int append(int length, char c) {
+        if (length == this.chars.length) {
+            char[] chars = new char[length * 2];
+            System.arraycopy(this.chars, 0, chars, 0, length);
+            this.chars = chars;
+        }
+        this.chars[length] = c;
+        return length + 1;
+    }
+
+    private int nextToken() throws IOException {
+        while (true) {
+            if (this.position == this.limit && !this.fill()) {
+                return -1;
+            }
+            int c = this.buffer[this.position++] & 0xFF;
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    private int next() throws IOException {
+        if (this.position == this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    private boolean ensure(int count) throws IOException {
+        if (this.limit - this.position >= count) {
+            return true;
+        }
+        if (this.buffer != this.window || (this.stream == null && this.source == null)) {
+            return false;
+        }
+
+        int remaining = this.limit - this.position;
+        System.arraycopy(this.window, this.position, this.window, 0, remaining);
+        this.consumed += this.position;
+        this.position = 0;
+        this.limit = remaining;
+        while (this.limit < count && this.read(this.limit) > 0) {
+            // keep reading until the requested amount of bytes is available
+        }
+        return this.limit >= count;
+    }
+
+    private boolean fill() throws IOException {
+        if (this.buffer != this.window) {
+            return false;
+        }
+        this.consumed += this.limit;
+        this.position = this.limit = 0;
+        return this.read(0) > 0;
+    }
+
+    private int read(int offset) throws IOException {
+        int read;
+        if (this.stream != null) {
+            read = this.stream.read(this.window, offset, this.window.length - offset);
+        } else if (this.source != null && this.source.hasRemaining()) {
+            read = Math.min(this.window.length - offset, this.source.remaining());
+            this.source.get(this.window, offset, read);
+        } else {
+            read = -1;
+        }
+
+        if (read > 0) {
+            this.limit += read;
+        }
+        return read;
+    }
+
+    private JsonSyntaxException syntaxError(String message) {
+        return new JsonSyntaxException(message + " at byte " + (this.consumed + this.position));
+    }
+
+}
@@ -5,6 +5,7 @@ import com.github.derrop.documents.Document;
 import java.io.File;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 
 public class WrappedSpecificDocumentStorage implements SpecificDocumentStorage {
@@ -45,6 +46,17 @@ public class WrappedSpecificDocumentStorage implements SpecificDocumentStorage {
         return this.storage.toString(this.document);
     }
 
+    @Override
+    public byte[] toByteArray() {
+        return this.storage.toByteArray(this.document);
+    }
+
+    @Override
+    public SpecificDocumentStorage write(ByteBuffer buffer) {
+        this.storage.write(this.document, buffer);
+        return this;
+    }
+
     @Override
     public SpecificDocumentStorage write(Writer writer) {
         this.storage.write(this.document, writer);
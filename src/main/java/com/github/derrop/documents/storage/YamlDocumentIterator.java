@@ -0,0 +1,26 @@
+package com.github.derrop.documents.storage;
+
+import com.google.gson.JsonObject;
+
+import java.io.Reader;
+
+/**
+ * Pulls the mappings out of a YAML stream with an own {@link YamlElementReader}, see
+ * {@link YamlElementReader#next(String)}.
+ */
+class YamlDocumentIterator extends DocumentIterator {
+
+    private final YamlElementReader reader = new YamlElementReader();
+    private final String key;
+
+    YamlDocumentIterator(Reader reader, String key) {
+        this.reader.open(reader);
+        this.key = key;
+    }
+
+    @Override
+    protected JsonObject readNext() {
+        return this.reader.next(this.key);
+    }
+
+}
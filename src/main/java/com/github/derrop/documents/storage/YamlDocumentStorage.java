@@ -2,36 +2,79 @@ package com.github.derrop.documents.storage;
 
 import com.github.derrop.documents.DefaultDocument;
 import com.github.derrop.documents.Document;
-import com.google.gson.JsonElement;
 import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.Yaml;
-import org.yaml.snakeyaml.constructor.Constructor;
-import org.yaml.snakeyaml.representer.Representer;
+import org.yaml.snakeyaml.error.YAMLException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
 
 public class YamlDocumentStorage implements DocumentStorage {
 
-    private final ThreadLocal<Yaml> yaml = ThreadLocal.withInitial(() -> {
+    private final ThreadLocal<YamlElementReader> elementReader = ThreadLocal.withInitial(YamlElementReader::new);
+    private final YamlElementWriter elementWriter;
+
+    public YamlDocumentStorage() {
         DumperOptions options = new DumperOptions();
         options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-        return new Yaml(new Constructor(), new Representer(), options);
-    });
+        this.elementWriter = new YamlElementWriter(options);
+    }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Document read(Reader reader) {
-        Map<String, Object> map = yaml.get().loadAs(reader, LinkedHashMap.class);
-        JsonElement element = DefaultDocument.GSON.toJsonTree(map);
-        return new DefaultDocument(element);
+        return new DefaultDocument(this.elementReader.get().read(reader));
+    }
+
+    @Override
+    public Document read(ByteBuffer buffer) {
+        return this.read(new ByteBufferReader(buffer));
+    }
+
+    /**
+     * Streams the documents of multi document YAML streams, the elements of root sequences are streamed one by one.
+     */
+    @Override
+    public Stream<Document> stream(Reader reader, String key) {
+        return new YamlDocumentIterator(reader, key).stream(reader);
+    }
+
+    @Override
+    public Stream<Document> stream(InputStream inputStream, String key) {
+        return this.stream(new InputStreamReader(inputStream, StandardCharsets.UTF_8), key);
+    }
+
+    /**
+     * Writes the object directly with the type adapters of {@link DefaultDocument#GSON}, the events are emitted while
+     * the adapters write the fields.
+     */
+    @Override
+    public void writeObject(Object object, Writer writer) {
+        if (object instanceof Document) {
+            this.write((Document) object, writer);
+            return;
+        }
+
+        try {
+            YamlJsonWriter jsonWriter = new YamlJsonWriter(this.elementWriter, writer);
+            DefaultDocument.GSON.toJson(object, object == null ? Object.class : object.getClass(), jsonWriter);
+            jsonWriter.close();
+        } catch (IOException exception) {
+            throw new YAMLException(exception);
+        }
     }
 
     @Override
     public void write(Document document, Writer writer) {
-        yaml.get().dump(document.toPlainObjects(), writer);
+        try {
+            this.elementWriter.write(document.toJsonObject(), writer);
+        } catch (IOException exception) {
+            throw new YAMLException(exception);
+        }
     }
 
 }
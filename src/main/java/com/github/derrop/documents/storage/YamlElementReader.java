@@ -0,0 +1,408 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.JsonBinary;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.constructor.Construct;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds Gson trees straight from the events of the SnakeYAML parser, without constructing the intermediate
+ * {@link java.util.LinkedHashMap} that {@link org.yaml.snakeyaml.Yaml#load(Reader)} would create.
+ * <p>
+ * Like SnakeYAML, at most {@link LoaderOptions#getMaxAliasesForCollections()} aliases of mappings and sequences are
+ * accepted per document, because every alias is expanded into its own copy and nested aliases would otherwise grow
+ * exponentially. {@code !!binary} scalars are read as {@link JsonBinary} instead of the arrays of numbers that the
+ * {@link java.util.LinkedHashMap} based reading produced.
+ * <p>
+ * Instances are not thread safe, the {@link YamlDocumentStorage} keeps one per thread.
+ */
+public class YamlElementReader {
+
+    private final Resolver resolver = new Resolver();
+    private final ScalarConstructor constructor = new ScalarConstructor();
+    private final Map<String, JsonElement> anchors = new HashMap<>();
+    private final int maxCollectionAliases;
+
+    private Parser parser;
+    private boolean inSequence;
+    private int collectionAliases;
+
+    public YamlElementReader() {
+        this(new LoaderOptions());
+    }
+
+    public YamlElementReader(LoaderOptions options) {
+        this.maxCollectionAliases = options.getMaxAliasesForCollections();
+    }
+
+    public JsonObject read(Reader reader) {
+        this.parser = new ParserImpl(new StreamReader(reader));
+        try {
+            this.expect(Event.ID.StreamStart);
+            if (this.parser.checkEvent(Event.ID.StreamEnd)) {
+                return new JsonObject();
+            }
+
+            this.expect(Event.ID.DocumentStart);
+            JsonElement root = this.readNode(this.parser.getEvent());
+            this.expect(Event.ID.DocumentEnd);
+
+            if (!this.parser.checkEvent(Event.ID.StreamEnd)) {
+                throw new YAMLException("expected a single document in the stream");
+            }
+
+            if (root.isJsonNull()) {
+                return new JsonObject();
+            }
+            if (!root.isJsonObject()) {
+                throw new YAMLException("expected a mapping as the document root but found " + root.getClass().getSimpleName());
+            }
+            return root.getAsJsonObject();
+        } finally {
+            this.parser = null;
+            this.anchors.clear();
+            this.collectionAliases = 0;
+        }
+    }
+
+    /**
+     * Starts reading the documents of the given stream one after another with {@link #next(String)}.
+     */
+    void open(Reader reader) {
+        this.parser = new ParserImpl(new StreamReader(reader));
+        this.inSequence = false;
+        this.collectionAliases = 0;
+        this.expect(Event.ID.StreamStart);
+    }
+
+    /**
+     * Reads the next mapping of the stream opened with {@link #open(Reader)}: the root mapping of the next document
+     * or the next mapping in the root sequence. With a key, the mappings in the sequence with that key in the root
+     * mappings are read instead.
+     *
+     * @return the next mapping or {@code null} if the end of the stream has been reached
+     */
+    JsonObject next(String key) {
+        while (true) {
+            if (this.inSequence) {
+                if (this.parser.checkEvent(Event.ID.SequenceEnd)) {
+                    this.parser.getEvent();
+                    this.inSequence = false;
+                    if (key != null) {
+                        this.skipUntil(Event.ID.MappingEnd);
+                    }
+                    this.endDocument();
+                    continue;
+                }
+
+                JsonElement element = this.readNode(this.parser.getEvent());
+                if (element.isJsonObject()) {
+                    return element.getAsJsonObject();
+                }
+                continue;
+            }
+
+            if (this.parser.checkEvent(Event.ID.StreamEnd)) {
+                return null;
+            }
+            this.expect(Event.ID.DocumentStart);
+
+            Event root = this.parser.getEvent();
+            if (key == null && root.is(Event.ID.SequenceStart)) {
+                this.inSequence = true;
+            } else if (key != null && root.is(Event.ID.MappingStart)) {
+                this.inSequence = this.findSequence(key);
+                if (!this.inSequence) {
+                    this.parser.getEvent();
+                    this.endDocument();
+                }
+            } else if (key == null) {
+                JsonElement element = this.readNode(root);
+                this.endDocument();
+                if (element.isJsonObject()) {
+                    return element.getAsJsonObject();
+                }
+            } else {
+                this.skipNode(root);
+                this.endDocument();
+            }
+        }
+    }
+
+    private boolean findSequence(String key) {
+        while (!this.parser.checkEvent(Event.ID.MappingEnd)) {
+            Event keyEvent = this.parser.getEvent();
+            if (keyEvent instanceof ScalarEvent && this.resolveTag((ScalarEvent) keyEvent).equals(Tag.MERGE)) {
+                this.skipNode(this.parser.getEvent());
+                continue;
+            }
+
+            String name = this.readKey(keyEvent);
+            Event value = this.parser.getEvent();
+            if (name.equals(key) && value.is(Event.ID.SequenceStart)) {
+                return true;
+            }
+            this.skipNode(value);
+        }
+        return false;
+    }
+
+    private void skipNode(Event event) {
+        if (event.is(Event.ID.Alias)) {
+            return;
+        }
+        if (((NodeEvent) event).getAnchor() != null) {
+            // anchored nodes might be referenced by the nodes that aren't skipped
+            this.readNode(event);
+            return;
+        }
+
+        if (event.is(Event.ID.SequenceStart)) {
+            this.skipUntil(Event.ID.SequenceEnd);
+        } else if (event.is(Event.ID.MappingStart)) {
+            this.skipUntil(Event.ID.MappingEnd);
+        }
+    }
+
+    private void skipUntil(Event.ID end) {
+        while (!this.parser.checkEvent(end)) {
+            this.skipNode(this.parser.getEvent());
+        }
+        this.parser.getEvent();
+    }
+
+    private void endDocument() {
+        this.expect(Event.ID.DocumentEnd);
+        // anchors are only valid in the document they have been defined in
+        this.anchors.clear();
+        this.collectionAliases = 0;
+    }
+
+    private void expect(Event.ID id) {
+        Event event = this.parser.getEvent();
+        if (!event.is(id)) {
+            throw new YAMLException("expected " + id + " but found " + event);
+        }
+    }
+
+    private JsonElement readNode(Event event) {
+        switch (event.getEventId()) {
+            case Alias:
+                return this.resolveAlias((AliasEvent) event);
+            case Scalar:
+                return this.register(event, this.readScalar((ScalarEvent) event));
+            case SequenceStart:
+                return this.readSequence(event);
+            case MappingStart:
+                return this.readMapping(event);
+            default:
+                throw new YAMLException("unexpected event " + event);
+        }
+    }
+
+    private JsonArray readSequence(Event start) {
+        JsonArray array = new JsonArray();
+        this.register(start, array);
+
+        while (!this.parser.checkEvent(Event.ID.SequenceEnd)) {
+            array.add(this.readNode(this.parser.getEvent()));
+        }
+        this.parser.getEvent();
+
+        return array;
+    }
+
+    private JsonObject readMapping(Event start) {
+        JsonObject object = new JsonObject();
+        this.register(start, object);
+
+        List<JsonElement> merges = null;
+        while (!this.parser.checkEvent(Event.ID.MappingEnd)) {
+            Event keyEvent = this.parser.getEvent();
+
+            if (keyEvent instanceof ScalarEvent && this.resolveTag((ScalarEvent) keyEvent).equals(Tag.MERGE)) {
+                if (merges == null) {
+                    merges = new ArrayList<>(1);
+                }
+                merges.add(this.readNode(this.parser.getEvent()));
+                continue;
+            }
+
+            String key = this.readKey(keyEvent);
+            object.add(key, this.readNode(this.parser.getEvent()));
+        }
+        this.parser.getEvent();
+
+        if (merges != null) {
+            this.merge(object, merges);
+        }
+
+        return object;
+    }
+
+    private void merge(JsonObject target, List<JsonElement> merges) {
+        // merged keys come first and never override explicit ones, the first source wins for duplicates
+        JsonObject merged = new JsonObject();
+        for (JsonElement merge : merges) {
+            if (merge.isJsonObject()) {
+                this.mergeInto(merged, target, merge.getAsJsonObject());
+            } else if (merge.isJsonArray()) {
+                for (JsonElement element : merge.getAsJsonArray()) {
+                    if (!element.isJsonObject()) {
+                        throw new YAMLException("expected a mapping for merging, but found " + element);
+                    }
+                    this.mergeInto(merged, target, element.getAsJsonObject());
+                }
+            } else {
+                throw new YAMLException("expected a mapping or list of mappings for merging, but found " + merge);
+            }
+        }
+
+        List<Map.Entry<String, JsonElement>> explicit = new ArrayList<>(target.entrySet());
+        for (Map.Entry<String, JsonElement> entry : explicit) {
+            target.remove(entry.getKey());
+        }
+        for (Map.Entry<String, JsonElement> entry : merged.entrySet()) {
+            target.add(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, JsonElement> entry : explicit) {
+            target.add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void mergeInto(JsonObject merged, JsonObject explicit, JsonObject source) {
+        for (Map.Entry<String, JsonElement> entry : source.entrySet()) {
+            if (!merged.has(entry.getKey()) && !explicit.has(entry.getKey())) {
+                merged.add(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private String readKey(Event event) {
+        JsonElement key = this.readNode(event);
+        if (key.isJsonNull()) {
+            return "null";
+        }
+        if (!key.isJsonPrimitive()) {
+            throw new YAMLException("only scalar mapping keys are supported, found " + event);
+        }
+        return key.getAsString();
+    }
+
+    private JsonElement resolveAlias(AliasEvent event) {
+        JsonElement element = this.anchors.get(event.getAnchor());
+        if (element == null) {
+            throw new YAMLException("found undefined alias " + event.getAnchor());
+        }
+        if ((element.isJsonObject() || element.isJsonArray()) && ++this.collectionAliases > this.maxCollectionAliases) {
+            throw new YAMLException("Number of aliases for non-scalar nodes exceeds the specified max=" + this.maxCollectionAliases);
+        }
+        // every alias gets its own copy, just like the separately constructed map entries did before
+        return element.deepCopy();
+    }
+
+    private JsonElement register(Event event, JsonElement element) {
+        String anchor = ((NodeEvent) event).getAnchor();
+        if (anchor != null) {
+            this.anchors.put(anchor, element);
+        }
+        return element;
+    }
+
+    private Tag resolveTag(ScalarEvent event) {
+        String tag = event.getTag();
+        if (tag == null || tag.equals("!")) {
+            return this.resolver.resolve(NodeId.scalar, event.getValue(), event.getImplicit().canOmitTagInPlainScalar());
+        }
+        return new Tag(tag);
+    }
+
+    private JsonElement readScalar(ScalarEvent event) {
+        Tag tag = this.resolveTag(event);
+        String value = event.getValue();
+
+        if (tag.equals(Tag.STR)) {
+            return new JsonPrimitive(value);
+        } else if (tag.equals(Tag.NULL)) {
+            return JsonNull.INSTANCE;
+        } else if (tag.equals(Tag.INT)) {
+            Number number = parseDecimalInteger(value);
+            return new JsonPrimitive(number != null ? number : (Number) this.constructor.construct(tag, value));
+        } else if (tag.equals(Tag.FLOAT)) {
+            return new JsonPrimitive(isPlainDecimal(value) ? Double.valueOf(value) : (Number) this.constructor.construct(tag, value));
+        } else if (tag.equals(Tag.BOOL)) {
+            return new JsonPrimitive((Boolean) this.constructor.construct(tag, value));
+        } else if (tag.equals(Tag.BINARY)) {
+            return new JsonBinary((byte[]) this.constructor.construct(tag, value));
+        } else {
+            // timestamps and custom tags are kept as they have been written
+            return new JsonPrimitive(value);
+        }
+    }
+
+    private static Number parseDecimalInteger(String value) {
+        int length = value.length();
+        int start = length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+') ? 1 : 0;
+        int digits = length - start;
+        // leading zeros mean octal in YAML 1.1, everything special is left to SnakeYAML
+        if (digits == 0 || digits > 18 || (digits > 1 && value.charAt(start) == '0')) {
+            return null;
+        }
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+        }
+
+        long number = Long.parseLong(value);
+        if (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+            return (int) number;
+        }
+        return number;
+    }
+
+    private static boolean isPlainDecimal(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class ScalarConstructor extends SafeConstructor {
+
+        Object construct(Tag tag, String value) {
+            Construct construct = this.yamlConstructors.get(tag);
+            return construct.construct(new ScalarNode(tag, value, null, null, DumperOptions.ScalarStyle.PLAIN));
+        }
+
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.github.derrop.documents.storage;
+
+import com.github.derrop.documents.JsonBinary;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.ImplicitTuple;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Emits Gson trees through the SnakeYAML emitter in the order of the tree, without copying them into plain
+ * {@link java.util.Map}s and {@link java.util.List}s first like {@link org.yaml.snakeyaml.Yaml#dump(Object)} requires.
+ * <p>
+ * Instances are thread safe as long as the given {@link DumperOptions} are not modified anymore.
+ */
+public class YamlElementWriter {
+
+    private static final ImplicitTuple IMPLICIT = new ImplicitTuple(true, false);
+    private static final ImplicitTuple IMPLICIT_STRING = new ImplicitTuple(true, true);
+    private static final ImplicitTuple QUOTED_STRING = new ImplicitTuple(false, true);
+    private static final ImplicitTuple EXPLICIT = new ImplicitTuple(false, false);
+
+    private final Resolver resolver = new Resolver();
+    private final DumperOptions options;
+
+    public YamlElementWriter(DumperOptions options) {
+        this.options = options;
+    }
+
+    public void write(JsonObject object, Writer writer) throws IOException {
+        Emitter emitter = this.begin(writer);
+        this.writeElement(emitter, object);
+        this.end(emitter);
+    }
+
+    /**
+     * Creates an emitter for the given writer and starts the stream and its only document, the events of the
+     * document can then be written with the other package private methods.
+     */
+    Emitter begin(Writer writer) throws IOException {
+        Emitter emitter = new Emitter(writer, this.options);
+        emitter.emit(new StreamStartEvent(null, null));
+        emitter.emit(new DocumentStartEvent(null, null, this.options.isExplicitStart(), this.options.getVersion(), this.options.getTags()));
+        return emitter;
+    }
+
+    void end(Emitter emitter) throws IOException {
+        emitter.emit(new DocumentEndEvent(null, null, this.options.isExplicitEnd()));
+        emitter.emit(new StreamEndEvent(null, null));
+    }
+
+    private void writeElement(Emitter emitter, JsonElement element) throws IOException {
+        if (element instanceof JsonBinary) {
+            this.writeScalar(emitter, Tag.BINARY, EXPLICIT, element.getAsString());
+        } else if (element.isJsonObject()) {
+            this.writeMappingStart(emitter);
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                this.writeString(emitter, entry.getKey());
+                this.writeElement(emitter, entry.getValue());
+            }
+            this.writeMappingEnd(emitter);
+        } else if (element.isJsonArray()) {
+            this.writeSequenceStart(emitter);
+            for (JsonElement child : element.getAsJsonArray()) {
+                this.writeElement(emitter, child);
+            }
+            this.writeSequenceEnd(emitter);
+        } else if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                this.writeBoolean(emitter, primitive.getAsBoolean());
+            } else if (primitive.isNumber()) {
+                this.writeNumber(emitter, primitive.getAsNumber());
+            } else {
+                this.writeString(emitter, primitive.getAsString());
+            }
+        } else {
+            this.writeNull(emitter);
+        }
+    }
+
+    void writeMappingStart(Emitter emitter) throws IOException {
+        emitter.emit(new MappingStartEvent(null, Tag.MAP.getValue(), true, null, null, this.options.getDefaultFlowStyle()));
+    }
+
+    void writeMappingEnd(Emitter emitter) throws IOException {
+        emitter.emit(new MappingEndEvent(null, null));
+    }
+
+    void writeSequenceStart(Emitter emitter) throws IOException {
+        emitter.emit(new SequenceStartEvent(null, Tag.SEQ.getValue(), true, null, null, this.options.getDefaultFlowStyle()));
+    }
+
+    void writeSequenceEnd(Emitter emitter) throws IOException {
+        emitter.emit(new SequenceEndEvent(null, null));
+    }
+
+    void writeBoolean(Emitter emitter, boolean value) throws IOException {
+        this.writeScalar(emitter, Tag.BOOL, IMPLICIT, value ? "true" : "false");
+    }
+
+    void writeNull(Emitter emitter) throws IOException {
+        this.writeScalar(emitter, Tag.NULL, IMPLICIT, "null");
+    }
+
+    void writeNumber(Emitter emitter, Number number) throws IOException {
+        String value;
+        if (number instanceof Double || number instanceof Float) {
+            double d = number.doubleValue();
+            value = Double.isNaN(d) ? ".NaN" : Double.isInfinite(d) ? (d > 0 ? ".inf" : "-.inf") : number.toString();
+        } else {
+            value = number.toString();
+        }
+
+        Tag detected = this.resolver.resolve(NodeId.scalar, value, true);
+        if (detected.equals(Tag.INT) || detected.equals(Tag.FLOAT)) {
+            this.writeScalar(emitter, detected, IMPLICIT, value);
+        } else {
+            // e.g. 1.0E10 is no float in YAML 1.1 without a sign in the exponent
+            this.writeScalar(emitter, Tag.FLOAT, EXPLICIT, value);
+        }
+    }
+
+    void writeString(Emitter emitter, String value) throws IOException {
+        ImplicitTuple implicit = this.resolver.resolve(NodeId.scalar, value, true).equals(Tag.STR) ? IMPLICIT_STRING : QUOTED_STRING;
+        DumperOptions.ScalarStyle style = this.options.getDefaultScalarStyle();
+
+        if (!StreamReader.isPrintable(value)) {
+            style = DumperOptions.ScalarStyle.DOUBLE_QUOTED;
+        } else if (style == DumperOptions.ScalarStyle.PLAIN && isMultiline(value)) {
+            style = DumperOptions.ScalarStyle.LITERAL;
+        }
+
+        emitter.emit(new ScalarEvent(null, Tag.STR.getValue(), implicit, value, null, null, style));
+    }
+
+    private void writeScalar(Emitter emitter, Tag tag, ImplicitTuple implicit, String value) throws IOException {
+        emitter.emit(new ScalarEvent(null, tag.getValue(), implicit, value, null, null, DumperOptions.ScalarStyle.PLAIN));
+    }
+
+    private static boolean isMultiline(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\n' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.github.derrop.documents.storage;
+
+import org.yaml.snakeyaml.emitter.Emitter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Emits the values written by Gson as YAML events through the {@link YamlElementWriter}, the result is the same as
+ * writing the tree of the value.
+ */
+class YamlJsonWriter extends ForwardingJsonWriter {
+
+    private final YamlElementWriter elementWriter;
+    private final Emitter emitter;
+
+    YamlJsonWriter(YamlElementWriter elementWriter, Writer writer) throws IOException {
+        this.elementWriter = elementWriter;
+        this.emitter = elementWriter.begin(writer);
+    }
+
+    @Override
+    protected void writeObjectStart() throws IOException {
+        this.elementWriter.writeMappingStart(this.emitter);
+    }
+
+    @Override
+    protected void writeObjectEnd() throws IOException {
+        this.elementWriter.writeMappingEnd(this.emitter);
+    }
+
+    @Override
+    protected void writeArrayStart() throws IOException {
+        this.elementWriter.writeSequenceStart(this.emitter);
+    }
+
+    @Override
+    protected void writeArrayEnd() throws IOException {
+        this.elementWriter.writeSequenceEnd(this.emitter);
+    }
+
+    @Override
+    protected void writeName(String name) throws IOException {
+        this.elementWriter.writeString(this.emitter, name);
+    }
+
+    @Override
+    protected void writeString(String value) throws IOException {
+        this.elementWriter.writeString(this.emitter, value);
+    }
+
+    @Override
+    protected void writeNumber(Number value) throws IOException {
+        this.elementWriter.writeNumber(this.emitter, value);
+    }
+
+    @Override
+    protected void writeLong(long value) throws IOException {
+        this.elementWriter.writeNumber(this.emitter, value);
+    }
+
+    @Override
+    protected void writeDouble(double value) throws IOException {
+        this.elementWriter.writeNumber(this.emitter, value);
+    }
+
+    @Override
+    protected void writeBoolean(boolean value) throws IOException {
+        this.elementWriter.writeBoolean(this.emitter, value);
+    }
+
+    @Override
+    protected void writeNull() throws IOException {
+        this.elementWriter.writeNull(this.emitter);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        this.elementWriter.end(this.emitter);
+    }
+
+}